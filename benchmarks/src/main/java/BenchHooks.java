@@ -0,0 +1,214 @@
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * BenchHooks exposes the game's hot paths to the JMH benchmarks in package
+ * bench. JMH refuses benchmarks in the default package, and a named package
+ * can't refer to the default one, so each hook wraps one hot path in a JDK
+ * functional interface that the benchmarks look up once by reflection and
+ * then call directly.
+ *
+ * @author Soheli Sultana
+ */
+public class BenchHooks {
+    private static final int POSITIONS = 1024; // #prepared positions, a power of 2
+    private static final long SEED = 434;
+
+    /**
+     * Is a board position together with the side to move.
+     */
+    private static class Position {
+        final Board board;
+        final int player;
+
+        Position(Board board, int player) {
+            this.board = board;
+            this.player = player;
+        }
+    }
+
+    /**
+     * Plays random moves from an empty board.
+     *
+     * @param spec     the board size, or null for 3x3
+     * @param maxMoves the most moves to play
+     * @param live     true to only return positions that are not over
+     */
+    private static Position[] positions(String spec, int maxMoves, boolean live) {
+        Random rand = new Random(SEED);
+        List<Position> result = new ArrayList<>();
+        while (result.size() < POSITIONS) {
+            Board board = Board.parse(spec);
+            int player = GameEngine.O;
+            int moves = rand.nextInt(maxMoves + 1);
+            for (int i = 0; i < moves && !board.isOver(); i++) {
+                int cell;
+                do {
+                    cell = rand.nextInt(board.cells());
+                } while (!board.isFree(cell));
+                board.play(cell, player);
+                player = 1 - player;
+            }
+            if (!live || !board.isOver()) {
+                result.add(new Position(board, player));
+            }
+        }
+        return result.toArray(new Position[0]);
+    }
+
+    /**
+     * @return a hook checking 3x3 positions for a win by O
+     */
+    public static IntSupplier checkWinning() {
+        Position[] positions = positions(null, 9, false);
+        return new IntSupplier() {
+            private int i = 0;
+
+            @Override
+            public int getAsInt() {
+                return positions[i++ & (POSITIONS - 1)].board.hasWon(GameEngine.O) ? 1 : 0;
+            }
+        };
+    }
+
+    /**
+     * @param ai       the strategy to benchmark
+     * @param spec     the board size, or null for 3x3
+     * @param maxMoves the most moves already played in a position
+     * @return a hook choosing the next move in live positions
+     */
+    private static IntSupplier nextMove(AutoPlayer ai, String spec, int maxMoves) {
+        Position[] positions = positions(spec, maxMoves, true);
+        return new IntSupplier() {
+            private int i = 0;
+
+            @Override
+            public int getAsInt() {
+                Position p = positions[i++ & (POSITIONS - 1)];
+                return ai.nextMove(p.board, p.player);
+            }
+        };
+    }
+
+    /**
+     * @return a hook running the line-counting heuristic on 3x3
+     */
+    public static IntSupplier heuristicMove() {
+        return nextMove(new HeuristicPlayer(), null, 8);
+    }
+
+    /**
+     * @return a hook looking up the perfect move on 3x3
+     */
+    public static IntSupplier perfectMove() {
+        return nextMove(new PerfectPlayer(), null, 8);
+    }
+
+    /**
+     * @return a hook running ThreatPlayer on a 15x15 Gomoku board
+     */
+    public static IntSupplier threatMove() {
+        return nextMove(new ThreatPlayer(), "15x15x5", 40);
+    }
+
+    /**
+     * @param binary true for the binary format, false for the legacy one
+     * @return a hook encoding a move
+     */
+    public static IntSupplier encode(boolean binary) {
+        Message msg = new Message().set(Message.MOVE, (byte) 'O', 4);
+        ByteBuffer out = ByteBuffer.allocate(MessageCodec.FRAME_SIZE);
+        return () -> {
+            out.clear();
+            MessageCodec.encode(msg, binary, out);
+            return out.position();
+        };
+    }
+
+    /**
+     * @param binary true for the binary format, false for the legacy one
+     * @return a hook decoding a move
+     */
+    public static IntSupplier decode(boolean binary) {
+        Message msg = new Message().set(Message.MOVE, (byte) 'O', 4);
+        ByteBuffer in = ByteBuffer.allocate(MessageCodec.FRAME_SIZE);
+        MessageCodec.encode(msg, binary, in);
+        in.flip();
+        return () -> {
+            in.rewind();
+            try {
+                MessageCodec.decode(in, msg);
+            } catch (StreamCorruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return msg.cell;
+        };
+    }
+
+    /**
+     * Is a hook that makes nThreads threads cross a barrier a given number
+     * of times: the calling thread plus nThreads - 1 pooled ones.
+     */
+    public static class BarrierRounds implements IntUnaryOperator, AutoCloseable {
+        private final int nThreads;
+        private final Barrier barrier;
+        private final ExecutorService pool;
+        private final List<Future<?>> helpers = new ArrayList<>();
+
+        BarrierRounds(String kind, int nThreads) {
+            this.nThreads = nThreads;
+            barrier = BarrierHarness.create(kind, nThreads);
+            pool = Executors.newFixedThreadPool(Math.max(1, nThreads - 1));
+        }
+
+        /**
+         * @param rounds #barriers every thread crosses
+         * @return rounds
+         */
+        @Override
+        public int applyAsInt(int rounds) {
+            helpers.clear();
+            for (int i = 1; i < nThreads; i++) {
+                int id = i;
+                helpers.add(pool.submit(() -> {
+                    for (int r = 0; r < rounds; r++) {
+                        barrier.await(id);
+                    }
+                }));
+            }
+            for (int r = 0; r < rounds; r++) {
+                barrier.await(0);
+            }
+            try {
+                for (Future<?> helper : helpers) {
+                    helper.get();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return rounds;
+        }
+
+        @Override
+        public void close() {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param kind     a barrier BarrierHarness.create() knows
+     * @param nThreads #threads meeting at the barrier
+     * @return a hook running barrier rounds
+     */
+    public static BarrierRounds barrier(String kind, int nThreads) {
+        return new BarrierRounds(kind, nThreads);
+    }
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the barriers BarrierHarness compares, from
+ * BarrierThreadIncomplete's original to CyclicBarrier. Each invocation makes
+ * all threads cross the barrier ROUNDS times, so that no thread is left
+ * waiting when a measurement iteration ends; the score is per barrier round.
+ *
+ * @author Soheli Sultana
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BarrierBenchmarks {
+    private static final int ROUNDS = 1000;
+
+    @Param({"2", "4", "8"})
+    public int threads;
+
+    @Param({"original", "sense", "tree", "dissemination", "cyclic", "phaser"})
+    public String kind;
+
+    private IntUnaryOperator barrier;
+
+    @Setup
+    public void setup() {
+        barrier = Hooks.get(IntUnaryOperator.class, "barrier", kind, threads);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ((AutoCloseable) barrier).close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS)
+    public int barrier() {
+        return barrier.applyAsInt(ROUNDS);
+    }
+}
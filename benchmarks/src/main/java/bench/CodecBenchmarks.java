@@ -0,0 +1,53 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks encoding and parsing a move in either wire format. Run with
+ * -prof gc to confirm that neither allocates.
+ *
+ * @author Soheli Sultana
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmarks {
+    @Param({"binary", "legacy"})
+    public String format;
+
+    private IntSupplier encode;
+    private IntSupplier decode;
+
+    @Setup
+    public void setup() {
+        boolean binary = format.equals("binary");
+        encode = Hooks.get(IntSupplier.class, "encode", binary);
+        decode = Hooks.get(IntSupplier.class, "decode", binary);
+    }
+
+    @Benchmark
+    public int encode() {
+        return encode.getAsInt();
+    }
+
+    @Benchmark
+    public int decode() {
+        return decode.getAsInt();
+    }
+}
@@ -0,0 +1,65 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the rules and the auto players: checkWinning on the 3x3
+ * bitboard, and choosing a move with the line-counting heuristic (which
+ * replaced updateStateByLocalPlayer/updateStateByAutoPlayer and
+ * getAutoPlayerNextMove), the perfect-play table and ThreatPlayer on 15x15.
+ * Every call works on the next of 1024 prepared random positions.
+ *
+ * @author Soheli Sultana
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmarks {
+    private IntSupplier checkWinning;
+    private IntSupplier heuristicMove;
+    private IntSupplier perfectMove;
+    private IntSupplier threatMove;
+
+    @Setup
+    public void setup() {
+        checkWinning = Hooks.get(IntSupplier.class, "checkWinning");
+        heuristicMove = Hooks.get(IntSupplier.class, "heuristicMove");
+        perfectMove = Hooks.get(IntSupplier.class, "perfectMove");
+        threatMove = Hooks.get(IntSupplier.class, "threatMove");
+    }
+
+    @Benchmark
+    public int checkWinning() {
+        return checkWinning.getAsInt();
+    }
+
+    @Benchmark
+    public int heuristicMove() {
+        return heuristicMove.getAsInt();
+    }
+
+    @Benchmark
+    public int perfectMove() {
+        return perfectMove.getAsInt();
+    }
+
+    @Benchmark
+    public int threatMove15x15() {
+        return threatMove.getAsInt();
+    }
+}
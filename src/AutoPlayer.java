@@ -0,0 +1,96 @@
+/**
+ * AutoPlayer is a strategy that chooses the automated player's next move.
+ * It also chooses and creates strategies, for the window, the services and
+ * the tools alike, so that none of them depends on another for it.
+ *
+ * @author Soheli Sultana
+ */
+public interface AutoPlayer {
+    /**
+     * Chooses a move.
+     *
+     * @param board  the current board, which must not be over
+     * @param player GameEngine.O or GameEngine.X, (i.e., the side to move)
+     * @return the cell to mark
+     */
+    int nextMove(Board board, int player);
+
+    /**
+     * Tells if this strategy always chooses the same move in the same
+     * position, which is what lets a PositionCache answer for it. A strategy
+     * that draws at random or searches on a time budget must not claim so.
+     *
+     * @return true if the moves depend on the position only, false by default
+     */
+    default boolean deterministic() {
+        return false;
+    }
+
+    /**
+     * Chooses the auto player's strategy for a board. Classic 3x3 is played
+     * perfectly unless the original heuristic is asked for with
+     * -Dttt.ai=heuristic, and any other size by ThreatPlayer. -Dttt.ai=mcts
+     * plays any size by MctsPlayer. Given a book of this size through
+     * -Dttt.book, it is looked up first. Every deterministic strategy but
+     * the perfect one, which is a table lookup already, goes through the
+     * PositionCache all games of this size share; MctsPlayer doesn't, since
+     * the first move it found would be frozen for every game.
+     *
+     * @param board the board to play on
+     * @return the strategy
+     */
+    static AutoPlayer forBoard(Board board) {
+        OpeningBook book = OpeningBook.shared();
+        if (book != null && book.fits(board)) {
+            return book.player(() -> cached(board));
+        }
+        return cached(board);
+    }
+
+    /**
+     * Is the body of forBoard() behind the book.
+     */
+    private static AutoPlayer cached(Board board) {
+        String ai = System.getProperty("ttt.ai");
+        AutoPlayer strategy = named("mcts".equals(ai) ? "mcts"
+                : !(board instanceof GameEngine) ? "threat"
+                : "heuristic".equals(ai) ? "heuristic" : "perfect");
+        if (strategy instanceof PerfectPlayer || !strategy.deterministic()) {
+            return strategy;
+        }
+        PositionCache cache = PositionCache.shared(board);
+        return (cache == null) ? strategy : cache.player(strategy);
+    }
+
+    /**
+     * Creates a strategy by name.
+     *
+     * @param name "perfect", "heuristic", "threat", "random", "mcts" or the
+     *             class name of any other AutoPlayer with a public no-arg
+     *             constructor
+     * @return a new instance of the strategy
+     * @throws IllegalArgumentException if there is no such strategy
+     */
+    static AutoPlayer named(String name) {
+        switch (name) {
+            case "perfect":
+                return new PerfectPlayer();
+            case "heuristic":
+                return new HeuristicPlayer();
+            case "threat":
+                return new ThreatPlayer();
+            case "random":
+                return new RandomPlayer();
+            case "mcts":
+                return new MctsPlayer();
+            default:
+                break;
+        }
+        try {
+            return Class.forName(name).asSubclass(AutoPlayer.class)
+                    .getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("no such strategy: " + name);
+        }
+    }
+}
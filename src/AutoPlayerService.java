@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AutoPlayerService is a long-running auto player that plays many games at
+ * once in one process, instead of one JVM launched through JSCH per game.
+ * Every game is played exactly as with the remotely launched
+ * OnlineTicTacToe: the user plays "O" first and the service answers each
+ * move with its own "X". "NewGame" and "SwitchTurn" clear the board and a
+ * CONFIG changes its size.
+ * <p>
+ * A connection carries one game, or, in the binary format, as many as its
+ * user wants: every message belongs to the game of its gameId, which the
+ * user chooses, a game starts with its first message and ends with its
+ * "ExitGame", and the connection closes with its last game. A user may
+ * pipeline, (i.e., send moves of many games without waiting for the
+ * replies); a game's messages that arrive while its move is being chosen
+ * wait behind it, while the other games go on, and the connection stops
+ * being read while MAX_IN_FLIGHT of its moves are pending.
+ * <p>
+ * One selector thread does all the I/O, while moves are chosen by a bounded
+ * pool of workers. When the pool's queue is full, the selector thread
+ * chooses the move itself, which slows down reading until the workers catch
+ * up. Replies are only buffered as they are made, and every connection with
+ * output is flushed once at the end of the selector's tick, so the moves of
+ * all its games chosen meanwhile leave in one write. A game only holds its
+ * board and a stateless strategy.
+ * <p>
+ * Besides the TCP port, the service listens at the Unix domain socket
+ * standing for it (see Transport.localPath()), so that bots on the same
+ * host skip the TCP/IP stack, unless -Dttt.transport=tcp is given.
+ *
+ * @author Soheli Sultana
+ */
+public class AutoPlayerService {
+    private static final int BUFSIZE = 1024;  // per-connection read buffer
+    private static final int OUTSIZE = 1024;  // per-connection write buffer
+    private static final int MUX_OUTSIZE = 64 * 1024; // once a connection has two games
+    private static final int QUEUE = 4096;    // #moves waiting for a worker
+    // #moves of a connection being chosen or waiting behind another of their game
+    private static final int MAX_IN_FLIGHT = MUX_OUTSIZE / MessageCodec.FRAME_SIZE / 2;
+
+    private final ServerSocketChannel server;
+    private ServerSocketChannel local = null; // the Unix domain socket, if any
+    private final Selector selector;
+    private final ThreadPoolExecutor workers;
+    private final ConcurrentLinkedQueue<Runnable> replies = new ConcurrentLinkedQueue<>();
+    private final Message msg = new Message(); // reused by the selector thread
+    private final List<Client> dirty = new ArrayList<>(); // to flush at the end of the tick
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java AutoPlayerService ipPort(>=5000) [#workers]");
+        System.exit(-1);
+    }
+
+    /**
+     * Starts an auto player service.
+     *
+     * @param args args[0]: the port to listen at, (args[1]: #workers)
+     */
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length != 2) {
+            usage();
+        }
+        int port = 0;
+        int nWorkers = Runtime.getRuntime().availableProcessors();
+        try {
+            port = Integer.parseInt(args[0]);
+            if (args.length == 2) {
+                nWorkers = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (port < 5000 || nWorkers < 1) {
+            usage();
+        }
+        try {
+            Metrics.start();
+            new AutoPlayerService(port, nWorkers).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Binds the service port and starts the workers.
+     *
+     * @param port     the port to listen at
+     * @param nWorkers the number of worker threads choosing moves
+     */
+    public AutoPlayerService(int port, int nWorkers) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        selector = Selector.open();
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        if (Transport.localPreferred()) {
+            try {
+                local = ChannelTransport.listen(port);
+                local.configureBlocking(false);
+                local.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException | UnsupportedOperationException e) {
+                // TCP only
+            }
+        }
+        workers = new ThreadPoolExecutor(nWorkers, nWorkers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+
+    /**
+     * Is one user's connection and the games it carries.
+     */
+    private static class Client {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(BUFSIZE);
+        ByteBuffer out = ByteBuffer.allocateDirect(OUTSIZE); // write mode
+        final Map<Integer, Game> games = new HashMap<>();   // by the user's gameId
+        boolean binary = false; // T: the user negotiated the binary format
+        boolean dirty = false;  // T: out is due to be flushed at the end of the tick
+        int inFlight = 0;       // #moves being chosen or waiting behind one
+        SelectionKey key = null;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Is one game of a connection. While a worker chooses its move, the
+     * board belongs to the worker, and its further messages wait in the
+     * backlog.
+     */
+    private static class Game {
+        final Client client;
+        final int gameId;
+        final ArrayDeque<Message> backlog = new ArrayDeque<>();
+        Board board = new GameEngine();
+        AutoPlayer ai = AutoPlayer.forBoard(board);
+        boolean thinking = false;
+
+        Game(Client client, int gameId) {
+            this.client = client;
+            this.gameId = gameId;
+        }
+    }
+
+    /**
+     * Is the body of the selector thread.
+     */
+    public void serve() throws IOException {
+        while (true) {
+            selector.select();
+            Runnable reply;
+            while ((reply = replies.poll()) != null) {
+                reply.run();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isAcceptable()) {
+                    accept((ServerSocketChannel) key.channel());
+                    continue;
+                }
+                Client client = (Client) key.attachment();
+                try {
+                    if (key.isValid() && key.isReadable()) {
+                        read(client);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(client);
+                    }
+                } catch (IOException e) {
+                    close(client);
+                }
+            }
+            // one write per connection for everything this tick produced
+            for (Client client : dirty) {
+                client.dirty = false;
+                try {
+                    if (client.channel.isOpen()) {
+                        flush(client);
+                    }
+                } catch (IOException e) {
+                    close(client);
+                }
+            }
+            dirty.clear();
+        }
+    }
+
+    private void accept(ServerSocketChannel listener) throws IOException {
+        SocketChannel channel;
+        while ((channel = listener.accept()) != null) {
+            channel.configureBlocking(false);
+            if (listener == server) {
+                channel.socket().setTcpNoDelay(true);
+            }
+            Client client = new Client(channel);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        }
+    }
+
+    private void read(Client client) throws IOException {
+        if (client.channel.read(client.in) < 0) {
+            close(client);
+            return;
+        }
+        drain(client);
+    }
+
+    /**
+     * Handles the buffered messages until the buffer runs dry or
+     * MAX_IN_FLIGHT moves are pending, and only reads on while they aren't.
+     */
+    private void drain(Client client) throws IOException {
+        boolean partial = false; // T: stopped at a message not all there yet
+        client.in.flip();
+        try {
+            while (client.channel.isOpen() && client.inFlight < MAX_IN_FLIGHT) {
+                msg.gameId = 0; // the legacy format has none
+                if (!MessageCodec.decode(client.in, msg)) {
+                    partial = true;
+                    break;
+                }
+                Metrics.MESSAGES_IN.increment();
+                dispatch(client, msg);
+            }
+        } finally {
+            client.in.compact();
+        }
+        if (partial && !client.in.hasRemaining()) {
+            // the rest of it could never be read
+            throw new IOException("message too long");
+        }
+        if (client.key.isValid()) {
+            int ops = client.key.interestOps();
+            client.key.interestOps((client.inFlight < MAX_IN_FLIGHT)
+                    ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Hands a message to its game, starting the game if it is new, or puts
+     * it behind the game's pending move.
+     */
+    private void dispatch(Client client, Message msg) {
+        if (msg.type == Message.HELLO) {
+            client.binary = true;
+            msg.cell = MessageCodec.VERSION;
+            send(client, msg);
+            return;
+        }
+        Game game = client.games.get(msg.gameId);
+        if (game == null) {
+            if (msg.type == Message.EXIT_GAME) {
+                if (client.games.isEmpty()) {
+                    close(client); // a user who leaves before playing
+                }
+                return;
+            }
+            if (client.games.size() == 1 && client.out.capacity() < MUX_OUTSIZE) {
+                // the replies of many games may pile up between two ticks
+                ByteBuffer out = ByteBuffer.allocateDirect(MUX_OUTSIZE);
+                client.out.flip();
+                out.put(client.out);
+                client.out = out;
+            }
+            game = new Game(client, msg.gameId);
+            client.games.put(msg.gameId, game);
+            Metrics.ACTIVE_GAMES.increment();
+        }
+        if (game.thinking) {
+            game.backlog.add(new Message().copy(msg));
+            client.inFlight++;
+        } else {
+            handle(game, msg);
+        }
+    }
+
+    private void handle(Game game, Message msg) {
+        switch (msg.type) {
+            case Message.CONFIG:
+                try {
+                    game.board = msg.newBoard();
+                    game.ai = AutoPlayer.forBoard(game.board);
+                } catch (IllegalArgumentException e) {
+                    close(game.client);
+                }
+                break;
+            case Message.NEW_GAME:
+            case Message.SWITCH_TURN:
+                // the auto player always plays second
+                game.board.clear();
+                break;
+            case Message.EXIT_GAME:
+                end(game);
+                break;
+            case Message.MOVE:
+                if (!game.board.play(msg.cell, GameEngine.O)) {
+                    // a taken or missing cell: as if I had pressed "Exit Game"
+                    msg.gameId = game.gameId;
+                    send(game.client, msg.set(Message.EXIT_GAME, (byte) 0, 0));
+                    end(game);
+                    break;
+                }
+                if (game.board.isOver()) {
+                    break;
+                }
+                // let a worker choose my move
+                game.thinking = true;
+                game.client.inFlight++;
+                workers.execute(() -> think(game));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Ends a game, dropping whatever the user sent it afterwards, and closes
+     * the connection with its last game once the output is written.
+     */
+    private void end(Game game) {
+        Client client = game.client;
+        client.inFlight -= game.backlog.size();
+        game.backlog.clear();
+        client.games.remove(game.gameId);
+        Metrics.ACTIVE_GAMES.decrement();
+        if (client.games.isEmpty()) {
+            try {
+                flush(client);
+            } catch (IOException e) {
+            }
+            close(client);
+        }
+    }
+
+    /**
+     * Runs on a worker: chooses a move and hands it back to the selector
+     * thread.
+     */
+    private void think(Game game) {
+        long start = System.nanoTime();
+        int move = game.ai.nextMove(game.board, GameEngine.X);
+        Metrics.AI_DECISION.record(System.nanoTime() - start);
+        game.board.play(move, GameEngine.X);
+        replies.add(() -> reply(game, move));
+        selector.wakeup();
+    }
+
+    /**
+     * Runs on the selector thread: sends my move, handles the game's
+     * messages that waited behind it and reads on.
+     */
+    private void reply(Game game, int move) {
+        Client client = game.client;
+        game.thinking = false;
+        client.inFlight--;
+        if (!client.channel.isOpen()) {
+            return;
+        }
+        msg.gameId = game.gameId;
+        send(client, msg.set(Message.MOVE, (byte) 'X', move));
+        Message waiting;
+        while (!game.thinking && (waiting = game.backlog.poll()) != null) {
+            client.inFlight--;
+            handle(game, waiting);
+        }
+        try {
+            // messages that arrived meanwhile may be buffered already
+            drain(client);
+        } catch (IOException e) {
+            close(client);
+        }
+    }
+
+    /**
+     * Buffers a message, to be flushed at the end of the tick.
+     */
+    private void send(Client client, Message msg) {
+        if (!client.channel.isOpen()) {
+            return;
+        }
+        try {
+            if (!MessageCodec.encode(msg, client.binary, client.out)) {
+                // make room for it right away
+                flush(client);
+                if (!MessageCodec.encode(msg, client.binary, client.out)) {
+                    throw new IOException("output overflow");
+                }
+            }
+            Metrics.MESSAGES_OUT.increment();
+            if (!client.dirty) {
+                client.dirty = true;
+                dirty.add(client);
+            }
+        } catch (IOException e) {
+            close(client);
+        }
+    }
+
+    /**
+     * Writes as much of the pending output as the socket accepts, and asks
+     * for OP_WRITE only while something is left over.
+     */
+    private void flush(Client client) throws IOException {
+        client.out.flip();
+        client.channel.write(client.out);
+        boolean pending = client.out.hasRemaining();
+        client.out.compact();
+        int ops = client.key.interestOps();
+        client.key.interestOps(pending ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+    }
+
+    private void close(Client client) {
+        if (client.channel.isOpen()) {
+            Metrics.ACTIVE_GAMES.add(-client.games.size());
+            client.games.clear();
+        }
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Barrier makes a fixed set of threads wait for each other: no thread
+ * returns from await() until all of them have called it, after which the
+ * barrier is ready for the next round. Each thread passes its own id, 0
+ * through to #parties - 1, which lets an implementation give every thread
+ * its own flags instead of funneling all of them through one lock.
+ *
+ * @author Soheli Sultana
+ */
+public interface Barrier {
+    // busy-waits before yielding; none on one core, where the thread being
+    // waited for can't run while I spin
+    int SPINS = (Runtime.getRuntime().availableProcessors() > 1) ? 1 << 10 : 0;
+    int YIELDS = 1 << 6;      // yields before parking
+    long PARK_NANOS = 20_000; // a parked waiter's nap
+
+    /**
+     * Waits until all threads have arrived.
+     *
+     * @param id the calling thread's id, 0 through to #parties - 1
+     */
+    void await(int id);
+
+    /**
+     * Backs off while a thread waits for a flag: spins first, since the
+     * last thread usually arrives within microseconds, then yields and
+     * finally parks briefly, so that waiters don't starve the threads they
+     * wait for when there are more threads than cores.
+     *
+     * @param waits how many times the caller has backed off in this wait
+     */
+    static void pause(int waits) {
+        if (waits < SPINS) {
+            Thread.onSpinWait();
+        } else if (waits < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BarrierHarness compares the barriers: BarrierThreadIncomplete's original
+ * synchronized/wait/notifyAll barrier, SenseBarrier, CombiningTreeBarrier,
+ * DisseminationBarrier, CyclicBarrier and Phaser. For every thread count
+ * and iteration count, it starts the threads, lets each of them cross the
+ * barrier that many times and prints the time per barrier.
+ * <p>
+ * Every thread also checks that its neighbor has reached the same round
+ * whenever it leaves the barrier, and the number of early departures is
+ * printed next to the time, since a fast barrier that lets threads through
+ * early is no barrier.
+ *
+ * @author Soheli Sultana
+ */
+public class BarrierHarness {
+    private static final String[] KINDS = {
+            "original", "sense", "tree", "dissemination", "cyclic", "phaser"
+    };
+    private static final int PAD = 16; // ints between two threads' rounds
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java BarrierHarness maxThreads iterations[,iterations...] "
+                + "[kind[,kind...]]");
+        System.err.println("  kinds: " + String.join(",", KINDS));
+        System.exit(-1);
+    }
+
+    /**
+     * Runs the comparison.
+     *
+     * @param args args[0]: the largest thread count, (the counts run from 2
+     *             and double up to it), args[1]: iteration counts, (args[2]:
+     *             the barriers to compare, all by default)
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 && args.length != 3) {
+            usage();
+        }
+        int maxThreads = 0;
+        int[] iterations = null;
+        try {
+            maxThreads = Integer.parseInt(args[0]);
+            String[] counts = args[1].split(",");
+            iterations = new int[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                iterations[i] = Integer.parseInt(counts[i]);
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        String[] kinds = (args.length == 3) ? args[2].split(",") : KINDS;
+        if (maxThreads < 2) {
+            usage();
+        }
+        System.out.println("barrier        threads  iterations   ns/barrier  early");
+        // 2, 4, 8, ... and maxThreads
+        for (int n = 2; ; n = Math.min(n * 2, maxThreads)) {
+            for (int x : iterations) {
+                for (String kind : kinds) {
+                    // warm up the barrier's code before timing it
+                    run(create(kind, n), n, Math.max(1, x / 10));
+                    LongAdder early = new LongAdder();
+                    long nanos = run(create(kind, n), n, x, early);
+                    System.out.printf("%-14s %7d %11d %12.1f %6d%n",
+                            kind, n, x, (double) nanos / x, early.sum());
+                }
+            }
+            if (n == maxThreads) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Creates a barrier by name.
+     *
+     * @param kind    "original", "sense", "tree", "dissemination", "cyclic"
+     *                or "phaser"
+     * @param parties #threads meeting at the barrier
+     * @return the barrier
+     */
+    public static Barrier create(String kind, int parties) {
+        switch (kind) {
+            case "original":
+                BarrierThreadIncomplete original =
+                        new BarrierThreadIncomplete(new int[1], parties, 0);
+                return id -> original.barrier();
+            case "sense":
+                return new SenseBarrier(parties);
+            case "tree":
+                return new CombiningTreeBarrier(parties);
+            case "dissemination":
+                return new DisseminationBarrier(parties);
+            case "cyclic":
+                CyclicBarrier cyclic = new CyclicBarrier(parties);
+                return id -> {
+                    try {
+                        cyclic.await();
+                    } catch (InterruptedException | BrokenBarrierException e) {
+                        throw new IllegalStateException(e);
+                    }
+                };
+            case "phaser":
+                Phaser phaser = new Phaser(parties);
+                return id -> phaser.arriveAndAwaitAdvance();
+            default:
+                throw new IllegalArgumentException("unknown barrier " + kind);
+        }
+    }
+
+    private static long run(Barrier barrier, int nThreads, int iterations) {
+        return run(barrier, nThreads, iterations, new LongAdder());
+    }
+
+    /**
+     * Makes nThreads threads cross a barrier iterations times.
+     *
+     * @param early counts the times a thread left before its neighbor arrived
+     * @return the nanoseconds from the start until the last thread finished
+     */
+    private static long run(Barrier barrier, int nThreads, int iterations, LongAdder early) {
+        int[] rounds = new int[nThreads * PAD];
+        CountDownLatch ready = new CountDownLatch(nThreads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            int id = t;
+            int next = (t + 1) % nThreads;
+            threads[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 1; i <= iterations; i++) {
+                    rounds[id * PAD] = i;
+                    barrier.await(id);
+                    if (rounds[next * PAD] < i) {
+                        early.increment();
+                    }
+                }
+            }, "Barrier-" + t);
+            threads[t].start();
+        }
+        try {
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            return System.nanoTime() - start;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Board is an m,n,k-game board: rows x cols cells, numbered row by row,
+ * where the first player to mark k cells in a row, column or diagonal wins.
+ * Classic tic-tac-toe is the 3,3,3-game and is played on a GameEngine;
+ * every other size is played on an MnkBoard.
+ *
+ * @author Soheli Sultana
+ */
+public interface Board {
+    /**
+     * Creates a board of the given size.
+     *
+     * @param rows #rows (3 through to MnkBoard.MAX_SIZE)
+     * @param cols #columns (3 through to MnkBoard.MAX_SIZE)
+     * @param k    #marks in a line to win
+     * @return a GameEngine for 3,3,3, otherwise an MnkBoard
+     */
+    static Board create(int rows, int cols, int k) {
+        if (rows == 3 && cols == 3 && k == 3) {
+            return new GameEngine();
+        }
+        return new MnkBoard(rows, cols, k);
+    }
+
+    /**
+     * Creates a board from a "ROWSxCOLSxK" string such as "15x15x5".
+     *
+     * @param spec the board size, or null for 3x3x3
+     * @return a new board
+     */
+    static Board parse(String spec) {
+        if (spec == null) {
+            return new GameEngine();
+        }
+        String[] size = spec.split("x");
+        if (size.length != 3) {
+            throw new IllegalArgumentException("board must be ROWSxCOLSxK: " + spec);
+        }
+        return create(Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                Integer.parseInt(size[2]));
+    }
+
+    /**
+     * @return #rows
+     */
+    int rows();
+
+    /**
+     * @return #columns
+     */
+    int cols();
+
+    /**
+     * @return #marks in a line to win
+     */
+    int k();
+
+    /**
+     * @return #cells, (i.e., rows x cols)
+     */
+    int cells();
+
+    /**
+     * Marks a cell for a player.
+     *
+     * @param cell   a cell index
+     * @param player GameEngine.O or GameEngine.X
+     * @return true if marked, false if the cell is out of range or taken
+     */
+    boolean play(int cell, int player);
+
+    /**
+     * @param cell a cell index
+     * @return true if nobody has marked the cell
+     */
+    boolean isFree(int cell);
+
+    /**
+     * @param cell a cell index
+     * @return GameEngine.O, GameEngine.X or GameEngine.NONE
+     */
+    int get(int cell);
+
+    /**
+     * @param player GameEngine.O or GameEngine.X
+     * @return true if player has completed a line
+     */
+    boolean hasWon(int player);
+
+    /**
+     * @return GameEngine.O or X if either has completed a line, otherwise NONE
+     */
+    int winner();
+
+    /**
+     * @return true if every cell is marked
+     */
+    boolean isFull();
+
+    /**
+     * @return true if someone won or the board is full
+     */
+    boolean isOver();
+
+    /**
+     * Clears the board for a new game.
+     */
+    void clear();
+}
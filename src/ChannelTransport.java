@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ChannelTransport is a Transport over a blocking SocketChannel, meant for a
+ * Unix domain socket between two processes on the same host, which skips
+ * the TCP/IP stack altogether.
+ * <p>
+ * Its streams call the channel directly rather than going through
+ * Channels.newInputStream(), whose streams share one lock, so that a thread
+ * blocked reading my counterpart's next move never holds up my own move.
+ *
+ * @author Soheli Sultana
+ */
+public class ChannelTransport implements Transport {
+    private final SocketChannel channel;
+    private final boolean accepted; // T: I accepted, F: I connected
+    private final InputStream input;
+    private final OutputStream output;
+
+    /**
+     * Wraps a connected channel.
+     *
+     * @param channel  a channel in blocking mode
+     * @param accepted true if this side accepted the connection
+     */
+    public ChannelTransport(SocketChannel channel, boolean accepted) {
+        this.channel = channel;
+        this.accepted = accepted;
+        input = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return (len == 0) ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+        output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+        };
+    }
+
+    /**
+     * Connects to the Unix domain socket standing for a port on this host.
+     *
+     * @param port the port a local server or player listens at
+     * @return a transport to it
+     */
+    public static ChannelTransport connect(int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(Transport.localPath(port)));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new ChannelTransport(channel, false);
+    }
+
+    /**
+     * Opens the Unix domain socket standing for a port on this host, to be
+     * served alongside the TCP port, replacing whatever stale file a
+     * crashed process left behind. The file is removed on exit.
+     *
+     * @param port a TCP port this process has already bound
+     * @return the server channel, in blocking mode
+     */
+    public static ServerSocketChannel listen(int port) throws IOException {
+        Path path = Transport.localPath(port);
+        // the TCP port is mine, so no live process owns this file
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        path.toFile().deleteOnExit();
+        return server;
+    }
+
+    /**
+     * Meets the other player on the same host at the Unix domain socket
+     * standing for a port: connects if the other player is already there,
+     * and otherwise listens and blocks until it arrives. Unlike polling
+     * accept() and connect() in turn, the second player gets in at once.
+     * Both players check and bind under a lock on ttt-PORT.lock, so that
+     * one never mistakes the other's fresh socket file for a stale one.
+     *
+     * @param port the port both players were given
+     * @return a transport to the other player, accepted() by the first one
+     */
+    public static ChannelTransport rendezvous(int port) throws IOException {
+        Path path = Transport.localPath(port);
+        Path lock = path.resolveSibling("ttt-" + port + ".lock");
+        ServerSocketChannel server;
+        synchronized (ChannelTransport.class) {
+            try (FileChannel file = FileChannel.open(lock,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock locked = file.lock();
+                try {
+                    try {
+                        return connect(port);
+                    } catch (IOException e) {
+                        // nobody is there, or a crashed player left its file
+                    }
+                    Files.deleteIfExists(path);
+                    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                    server.bind(UnixDomainSocketAddress.of(path));
+                } finally {
+                    locked.release();
+                }
+            }
+        }
+        try {
+            return new ChannelTransport(server.accept(), true);
+        } finally {
+            server.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * @return true if this side accepted the connection, (i.e., arrived
+     * first)
+     */
+    public boolean accepted() {
+        return accepted;
+    }
+
+    @Override
+    public InputStream input() {
+        return input;
+    }
+
+    @Override
+    public OutputStream output() {
+        return output;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CombiningTreeBarrier is a sense-reversing barrier whose single counter is
+ * split into a tree of small ones. Threads arrive at a leaf shared with only
+ * radix - 1 others; the last of them carries on to the parent, and so on up
+ * to the root, whose last arrival flips the senses back down the tree. No
+ * counter is hit by more than radix threads, so the barrier keeps scaling
+ * when one shared counter's cache line would bounce between many cores.
+ *
+ * @author Soheli Sultana
+ */
+public class CombiningTreeBarrier implements Barrier {
+    private static final int PAD = 64; // bytes between two threads' senses
+
+    /**
+     * Is a counter shared by up to radix threads or children.
+     */
+    private static class Node {
+        final int size;
+        final AtomicInteger count;
+        final Node parent;
+        volatile boolean sense = false;
+
+        Node(int size, Node parent) {
+            this.size = size;
+            this.count = new AtomicInteger(size);
+            this.parent = parent;
+        }
+    }
+
+    private final Node[] leaves;   // leaves[id / radix]
+    private final int radix;
+    private final boolean[] local; // local[id * PAD]: my sense
+
+    /**
+     * @param parties #threads meeting at the barrier
+     * @param radix   #threads or children sharing a node, at least 2
+     */
+    public CombiningTreeBarrier(int parties, int radix) {
+        if (parties < 1 || radix < 2) {
+            throw new IllegalArgumentException("bad #parties " + parties + " or radix " + radix);
+        }
+        this.radix = radix;
+        local = new boolean[parties * PAD];
+        // sizes of every level, from the leaves up to the root
+        List<int[]> levels = new ArrayList<>();
+        int[] sizes = group(parties, radix);
+        levels.add(sizes);
+        while (sizes.length > 1) {
+            sizes = group(sizes.length, radix);
+            levels.add(sizes);
+        }
+        // build from the root down, so that every node knows its parent
+        Node[] above = null;
+        for (int level = levels.size() - 1; level >= 0; level--) {
+            sizes = levels.get(level);
+            Node[] nodes = new Node[sizes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = new Node(sizes[i], (above == null) ? null : above[i / radix]);
+            }
+            above = nodes;
+        }
+        leaves = above;
+    }
+
+    /**
+     * Builds a tree of nodes shared by four threads or children each.
+     *
+     * @param parties #threads meeting at the barrier
+     */
+    public CombiningTreeBarrier(int parties) {
+        this(parties, 4);
+    }
+
+    /**
+     * @return the sizes of the groups n members fall into, radix per group
+     */
+    private static int[] group(int n, int radix) {
+        int[] sizes = new int[(n + radix - 1) / radix];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = Math.min(radix, n - i * radix);
+        }
+        return sizes;
+    }
+
+    @Override
+    public void await(int id) {
+        boolean mySense = !local[id * PAD];
+        local[id * PAD] = mySense;
+        arrive(leaves[id / radix], mySense);
+    }
+
+    private void arrive(Node node, boolean mySense) {
+        if (node.count.decrementAndGet() == 0) {
+            // the last at this node: wait for the rest of the tree, then
+            // release this node's waiters
+            if (node.parent != null) {
+                arrive(node.parent, mySense);
+            }
+            node.count.set(node.size);
+            node.sense = mySense;
+            return;
+        }
+        for (int waits = 0; node.sense != mySense; waits++) {
+            Barrier.pause(waits);
+        }
+    }
+}
@@ -5,18 +5,19 @@ import java.net.*;
 /**
  * Connection establishes a secured TCP connection from a user local to a
  * given remote machine and maintains a pair of ObjectInput and ObjectOutput
- * Streams with that remote machine.
+ * Streams with that remote machine. The ssh2 session underneath comes from
+ * SessionPool, so that connections to the same user@host with the same
+ * password share one login and each only opens its own exec channel.
  *
  * @author  Munehiro Fukuda
  * @version %I% %G%
  * @since   1.0
  */
 
-public class Connection {
+public class Connection implements Transport {
     public DataInputStream in = null;   // an output to a remote machiine
     public DataOutputStream out = null; // an input from a remote machine
     
-    private final int JschPort = 22;
     private Session session = null;
     private Channel channel= null;
 
@@ -32,25 +33,11 @@ public class Connection {
     public Connection( String username, String password, String hostname,
 		       String command ) {
 	try {
-	    // ssh2 connection to a slave server
-	    JSch jsch = new JSch( );
-	    session = jsch.getSession( username, hostname, JschPort );
-	    
-	    // username and password will be given via UserInfo interface
-	    UserInfo ui = new MyUserInfo( password );
-	    session.setUserInfo( ui );
-	    session.connect( );
-	    System.err.println( "ssh2 connection to " + hostname );
-	    
-	    // execute a remote process
-	    channel = session.openChannel( "exec" );
-	    ( (ChannelExec)channel ).setCommand( command );
-	    channel.connect( );
-	    
-	    // set up a pair of ObjectInputStream and ObjectOutputStream.
-	    out = new DataOutputStream( channel.getOutputStream( ) );
-	    out.flush( );
-	    in = new DataInputStream( channel.getInputStream( ) );
+	    Connection connection = open( username, password, hostname, command );
+	    session = connection.session;
+	    channel = connection.channel;
+	    in = connection.in;
+	    out = connection.out;
 	} catch( Exception e ) {
 	    System.err.println( "upon a ssh2 connection to " + hostname );
 	    e.printStackTrace( );
@@ -58,6 +45,66 @@ public class Connection {
 	}
     }
 
+    /**
+     * open() is executed at a user-local machine like the constructor
+     * above, but reports a failure to its caller instead of exiting, so
+     * that a master can go on with the other remote machines.
+     *
+     * @param username your user account name
+     * @param password the password corresponding to username
+     * @param hostname the name of a remote host computer to connect to
+     * @param command  the remote java program to execute
+     * @return a connection to the remote program
+     */
+    public static Connection open( String username, String password,
+				   String hostname, String command )
+	throws JSchException, IOException {
+	// ssh2 connection to a slave server, reused if already logged in
+	Session session =
+	    SessionPool.shared( ).acquire( username, password, hostname );
+	System.err.println( "ssh2 connection to " + hostname );
+
+	// execute a remote process
+	Channel channel = null;
+	try {
+	    channel = exec( session, command );
+	} catch( JSchException e ) {
+	    // a pooled session may have gone stale; retry on a fresh one
+	    SessionPool.shared( ).invalidate( session );
+	    session = SessionPool.shared( ).acquire( username, password, hostname );
+	    try {
+		channel = exec( session, command );
+	    } catch( JSchException again ) {
+		SessionPool.shared( ).invalidate( session );
+		throw again;
+	    }
+	}
+	return new Connection( session, channel );
+    }
+
+    /**
+     * Opens an exec channel running command on a session.
+     */
+    private static Channel exec( Session session, String command )
+	throws JSchException {
+	Channel channel = session.openChannel( "exec" );
+	( (ChannelExec)channel ).setCommand( command );
+	channel.connect( );
+	return channel;
+    }
+
+    /**
+     * Sets up a pair of streams over an exec channel.
+     */
+    private Connection( Session session, Channel channel ) throws IOException {
+	this.session = session;
+	this.channel = channel;
+	// set up a pair of ObjectInputStream and ObjectOutputStream.
+	out = new DataOutputStream( channel.getOutputStream( ) );
+	out.flush( );
+	in = new DataInputStream( channel.getInputStream( ) );
+    }
+
     /**
      * This is a constructor execute at a remote machine to receive a 
      * connection from a user-local machine.
@@ -72,46 +119,36 @@ public class Connection {
 	}
     }
 
+    /**
+     * @return the stream from the other machine
+     */
+    public InputStream input( ) {
+	return in;
+    }
+
+    /**
+     * @return the stream to the other machine
+     */
+    public OutputStream output( ) {
+	return out;
+    }
+
     /**
      * close() is called at a user-local machine to close the ssh connection 
-     * with a given remote machine.
+     * with a given remote machine. Only the exec channel is closed, while
+     * the session goes back to SessionPool for the next connection.
      */
     public void close( ) {
 	try {
+	    if ( channel != null )
+		channel.disconnect( );
 	    if ( session != null )
-		session.disconnect( );
+		SessionPool.shared( ).release( session );
+	    session = null;
 	} catch( Exception e ) {
 	    System.err.println( );
 	    e.printStackTrace( );
 	    System.exit( -1 );
 	}
     }
-
-    /**
-     * MyUserInfo stores a user account and password information. It is
-     * used in libssh to establish a secured TCP connection from a user-local 
-     * to a remote machine.
-     */
-    private class MyUserInfo implements UserInfo {
-	// Private data members
-	private String _passwd = null; // Users password
-	
-	// Constructor sets up password
-	public MyUserInfo( String passwd )
-	{
-	    this._passwd = passwd;
-	}
-	
-	// Because passphrase does not apply use null
-	public String getPassphrase( ) { return null; };
-	// Returns the password of the user
-	public String getPassword( ) { return _passwd; };
-	// You may only set password during construction of UserInfo
-	public boolean promptPassword( String Message ) { return true; };
-	// Because passphrase does not apply this function simply returns true
-	public boolean promptPassphrase( String message ) { return true; };
-	// Because this application runs remotely, no need to prompt the user
-	public boolean promptYesNo( String message ) { return true; };
-	public void showMessage( String message ) { };
-    }
-}
\ No newline at end of file
+}
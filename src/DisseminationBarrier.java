@@ -0,0 +1,49 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * DisseminationBarrier needs no counter at all. In round r, (0 through to
+ * ceil(log2(#parties)) - 1), thread i signals thread (i + 2^r) mod #parties
+ * and waits for the signal of thread (i - 2^r) mod #parties. After the last
+ * round every thread has heard, directly or not, from every other one.
+ * <p>
+ * Each flag has exactly one writer and one reader and sits on its own cache
+ * line. A signal is the round's episode number rather than a boolean, so
+ * flags never need resetting and a thread that is an episode ahead can't
+ * be mistaken for the current one.
+ *
+ * @author Soheli Sultana
+ */
+public class DisseminationBarrier implements Barrier {
+    private static final int STRIDE = 8; // longs per cache line
+
+    private final int parties;
+    private final int rounds;
+    private final AtomicLongArray flags; // flags[(id * rounds + r) * STRIDE]
+    private final long[] episode;        // episode[id * STRIDE]: my #awaits
+
+    /**
+     * @param parties #threads meeting at the barrier
+     */
+    public DisseminationBarrier(int parties) {
+        if (parties < 1) {
+            throw new IllegalArgumentException("bad #parties " + parties);
+        }
+        this.parties = parties;
+        rounds = 32 - Integer.numberOfLeadingZeros(parties - 1); // ceil(log2(parties))
+        flags = new AtomicLongArray(Math.max(1, parties * rounds) * STRIDE);
+        episode = new long[parties * STRIDE];
+    }
+
+    @Override
+    public void await(int id) {
+        long e = ++episode[id * STRIDE];
+        for (int r = 0; r < rounds; r++) {
+            int partner = (id + (1 << r)) % parties;
+            flags.set((partner * rounds + r) * STRIDE, e);
+            int mine = (id * rounds + r) * STRIDE;
+            for (int waits = 0; flags.get(mine) < e; waits++) {
+                Barrier.pause(waits);
+            }
+        }
+    }
+}
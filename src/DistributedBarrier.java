@@ -0,0 +1,190 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DistributedBarrier is BarrierThreadIncomplete's barrier across processes:
+ * no process returns from await() until every process has called it, and
+ * the barrier is then ready for the next round. The master and its slaves
+ * form a tree rooted at the master. A process waits for an ARRIVE from each
+ * child, reports its own ARRIVE to its parent, waits for the parent's
+ * RELEASE and passes it on to its children, so a round takes two trips
+ * through the tree.
+ * <p>
+ * With a radix of at least #slaves, every slave is a child of the master,
+ * (i.e., the centralized topology), which costs the master #slaves reads and
+ * writes per round. A smaller radix spreads that work over the slaves at
+ * the price of log(#slaves) hops.
+ * <p>
+ * The master reaches every slave over the link it launched it with, (i.e., a
+ * Connection, or a ProcessTransport on localhost), but a slave reaches a
+ * slave parent over TCP: each slave listens on a port of its own, reports
+ * it to the master, and is told where its parent listens.
+ *
+ * @author Soheli Sultana
+ */
+public class DistributedBarrier {
+    private static final byte ARRIVE = 1;
+    private static final byte RELEASE = 2;
+
+    private final DataInputStream parentIn;    // null at the root
+    private final DataOutputStream parentOut;
+    private final DataInputStream[] childIn;
+    private final DataOutputStream[] childOut;
+
+    /**
+     * Wraps a process's links into the tree.
+     *
+     * @param parent   the link to my parent, null at the root
+     * @param children the links to my children
+     */
+    public DistributedBarrier(Transport parent, List<Transport> children) {
+        parentIn = (parent == null) ? null : new DataInputStream(parent.input());
+        parentOut = (parent == null) ? null : new DataOutputStream(parent.output());
+        childIn = new DataInputStream[children.size()];
+        childOut = new DataOutputStream[children.size()];
+        for (int i = 0; i < children.size(); i++) {
+            childIn[i] = new DataInputStream(children.get(i).input());
+            childOut[i] = new DataOutputStream(children.get(i).output());
+        }
+    }
+
+    /**
+     * Waits until every process has arrived.
+     */
+    public void await() throws IOException {
+        for (DataInputStream child : childIn) {
+            expect(child, ARRIVE);
+        }
+        if (parentOut != null) {
+            parentOut.writeByte(ARRIVE);
+            parentOut.flush();
+            expect(parentIn, RELEASE);
+        }
+        for (DataOutputStream child : childOut) {
+            child.writeByte(RELEASE);
+            child.flush();
+        }
+    }
+
+    private static void expect(DataInputStream in, byte type) throws IOException {
+        byte got = in.readByte();
+        if (got != type) {
+            throw new IOException("expected " + type + " but got " + got);
+        }
+    }
+
+    /**
+     * @return the parent of a node in a tree where node 0 is the master
+     * and slave i is node i + 1
+     */
+    static int parent(int node, int radix) {
+        return (node - 1) / radix;
+    }
+
+    /**
+     * @return #children of a node among nodes 0 through to nNodes - 1
+     */
+    static int children(int node, int radix, int nNodes) {
+        long first = (long) node * radix + 1;
+        return (int) Math.max(0, Math.min(radix, nNodes - first));
+    }
+
+    /**
+     * Runs the master's side: arranges the slaves into a tree, then crosses
+     * the barrier once to warm up and rounds more times while timing them.
+     *
+     * @param slaves the links the slaves were launched with
+     * @param radix  #children per process, at least 1
+     * @param rounds #timed barrier rounds
+     * @return the mean nanoseconds per round
+     */
+    public static double master(List<? extends Transport> slaves, int radix, int rounds)
+            throws IOException {
+        int nNodes = slaves.size() + 1;
+        String[] hosts = new String[nNodes];
+        int[] ports = new int[nNodes];
+        for (int i = 0; i < slaves.size(); i++) {
+            DataInputStream in = new DataInputStream(slaves.get(i).input());
+            hosts[i + 1] = in.readUTF();
+            ports[i + 1] = in.readInt();
+        }
+        List<Transport> children = new ArrayList<>();
+        for (int i = 0; i < slaves.size(); i++) {
+            int node = i + 1;
+            int parent = parent(node, radix);
+            DataOutputStream out = new DataOutputStream(slaves.get(i).output());
+            out.writeInt(rounds);
+            out.writeInt(children(node, radix, nNodes));
+            out.writeBoolean(parent == 0);
+            if (parent == 0) {
+                children.add(slaves.get(i));
+            } else {
+                out.writeUTF(hosts[parent]);
+                out.writeInt(ports[parent]);
+            }
+            out.flush();
+        }
+        DistributedBarrier barrier = new DistributedBarrier(null, children);
+        barrier.await();
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            barrier.await();
+        }
+        return (double) (System.nanoTime() - start) / Math.max(1, rounds);
+    }
+
+    /**
+     * Runs a slave's side: reports where it listens, joins the tree the
+     * master describes and crosses the barrier as often as the master does.
+     *
+     * @param master the link to the master, (i.e., standard input and output)
+     */
+    public static void slave(Transport master) throws IOException {
+        DataInputStream in = new DataInputStream(master.input());
+        DataOutputStream out = new DataOutputStream(master.output());
+        List<Transport> children = new ArrayList<>();
+        Transport parent = null;
+        try (ServerSocket listener = new ServerSocket(0)) {
+            out.writeUTF(InetAddress.getLocalHost().getHostAddress());
+            out.writeInt(listener.getLocalPort());
+            out.flush();
+            int rounds = in.readInt();
+            int nChildren = in.readInt();
+            if (in.readBoolean()) {
+                parent = master;
+            } else {
+                String host = in.readUTF();
+                int port = in.readInt();
+                Socket socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                parent = Transport.of(socket);
+            }
+            for (int i = 0; i < nChildren; i++) {
+                Socket socket = listener.accept();
+                socket.setTcpNoDelay(true);
+                children.add(Transport.of(socket));
+            }
+            DistributedBarrier barrier = new DistributedBarrier(parent, children);
+            // the warm-up round plus the timed ones
+            for (int r = 0; r <= rounds; r++) {
+                barrier.await();
+            }
+        } catch (EOFException e) {
+            // the master has gone
+        } finally {
+            for (Transport child : children) {
+                child.close();
+            }
+            if (parent != null && parent != master) {
+                parent.close();
+            }
+        }
+    }
+}
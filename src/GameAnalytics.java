@@ -0,0 +1,571 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * GameAnalytics reads what games leave behind, (i.e., the auto player's
+ * logs.txt and GameServer's journals), and keeps running aggregates over
+ * every game it sees: how often each side wins or draws, the frequencies of
+ * opening moves, the average game length, and the positions the auto player,
+ * who always plays "X", lost in most often.
+ * <p>
+ * Memory stays bounded however much it reads: openings are counted per
+ * board size, at most -Dttt.analytics.games games are followed at once,
+ * (65536 by default; the least recently moved one is dropped as abandoned
+ * beyond that), and loss positions are kept by the Space-Saving algorithm,
+ * which tracks the -Dttt.analytics.top most frequent ones, (32 by default),
+ * with counts overestimated by at most the error printed next to them.
+ * <p>
+ * "tail" follows one log or journal as it grows, printing the aggregates
+ * every few seconds; a log truncated by a new auto player is read again from
+ * the start. "batch" reprocesses archives: every log file and journal
+ * directory found under its arguments is read by a task of its own on all
+ * cores, and the per-task aggregates are merged at the end.
+ *
+ * @author Soheli Sultana
+ */
+public class GameAnalytics {
+    private static final int MAX_GAMES = Integer.getInteger("ttt.analytics.games", 1 << 16);
+    private static final int TOP = Integer.getInteger("ttt.analytics.top", 32);
+    private static final long POLL_MILLIS = 200; // tail's nap at the end of its input
+    private static final int LOG = 0;            // the game id of a log's game
+
+    /**
+     * Is a game being followed.
+     */
+    private static class Game {
+        final Board board;
+        int length = 0;  // #moves so far
+        int opening = -1; // the first move's cell
+
+        Game(Board board) {
+            this.board = board;
+        }
+    }
+
+    // the aggregates
+    private long games = 0;     // finished games
+    private long oWins = 0;
+    private long xWins = 0;
+    private long abandoned = 0; // games cut short after at least one move
+    private long moves = 0;     // #moves over all finished games
+    private final Map<String, long[]> openings = new TreeMap<>(); // by board size
+    private final TopK losses = new TopK(TOP); // X's lost positions
+    // the games being followed, the least recently moved first
+    private final LinkedHashMap<Integer, Game> live = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Game> eldest) {
+            if (size() > MAX_GAMES) {
+                abandon(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    private Board logBoard = new GameEngine(); // the size a log plays on
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java GameAnalytics tail logs.txt|journalDir [reportSeconds]");
+        System.err.println("       java GameAnalytics batch path...");
+        System.exit(-1);
+    }
+
+    /**
+     * Runs either mode.
+     *
+     * @param args args[0]: "tail", args[1]: the log file or journal
+     *             directory, (args[2]: seconds between reports, 10 by
+     *             default); or args[0]: "batch", args[1...]: the files and
+     *             directories to reprocess
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || TOP < 1 || MAX_GAMES < 1) {
+            usage();
+        }
+        try {
+            if (args[0].equals("tail") && args.length <= 3) {
+                int seconds = 10;
+                try {
+                    if (args.length == 3) {
+                        seconds = Integer.parseInt(args[2]);
+                    }
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (seconds < 1) {
+                    usage();
+                }
+                tail(Path.of(args[1]), seconds);
+            } else if (args[0].equals("batch")) {
+                List<Path> paths = new ArrayList<>();
+                for (int i = 1; i < args.length; i++) {
+                    paths.add(Path.of(args[i]));
+                }
+                batch(paths);
+            } else {
+                usage();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Follows a log or journal forever.
+     *
+     * @param source  a log file or a journal directory
+     * @param seconds seconds between reports
+     */
+    private static void tail(Path source, int seconds) throws IOException {
+        GameAnalytics analytics = new GameAnalytics();
+        long nextReport = System.nanoTime() + seconds * 1_000_000_000L;
+        boolean journal = Files.isDirectory(source);
+        long lsn = 0;                // the next journal record
+        long position = 0;           // the next log byte
+        StringBuilder line = new StringBuilder(); // a log line read in part
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        while (true) {
+            boolean idle;
+            if (journal) {
+                long from = lsn;
+                lsn = GameJournal.scan(source, lsn, true, analytics::record);
+                idle = (lsn == from);
+            } else {
+                try (FileChannel file = FileChannel.open(source, StandardOpenOption.READ)) {
+                    if (file.size() < position) {
+                        // truncated by a new auto player
+                        position = 0;
+                        line.setLength(0);
+                        analytics.logLine("Lost the local user...");
+                    }
+                    idle = true;
+                    int n;
+                    while ((n = file.read(buffer.clear(), position)) > 0) {
+                        position += n;
+                        idle = false;
+                        // logs are ASCII, so a byte is a char
+                        for (int i = 0; i < n; i++) {
+                            char c = (char) buffer.get(i);
+                            if (c == '\n') {
+                                analytics.logLine(line.toString().strip());
+                                line.setLength(0);
+                            } else {
+                                line.append(c);
+                            }
+                        }
+                    }
+                } catch (NoSuchFileException e) {
+                    idle = true; // not written yet
+                }
+            }
+            if (System.nanoTime() - nextReport >= 0) {
+                analytics.report(System.out);
+                System.out.println();
+                nextReport += seconds * 1_000_000_000L;
+            }
+            if (idle) {
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reprocesses archives on all cores and prints the merged aggregates.
+     *
+     * @param paths files and directories; every directory holding journal
+     *              segments is read as a journal, every other file as a log
+     */
+    private static void batch(List<Path> paths) throws IOException {
+        long start = System.nanoTime();
+        List<Callable<GameAnalytics>> tasks = new ArrayList<>();
+        for (Path path : paths) {
+            try (Stream<Path> walk = Files.walk(path)) {
+                for (Path file : (Iterable<Path>) walk::iterator) {
+                    String name = file.getFileName().toString();
+                    if (Files.isDirectory(file)) {
+                        if (isJournal(file)) {
+                            tasks.add(() -> {
+                                GameAnalytics analytics = new GameAnalytics();
+                                GameJournal.scan(file, 0, true, analytics::record);
+                                return analytics;
+                            });
+                        }
+                    } else if (Files.isRegularFile(file) && !name.startsWith("journal-")
+                            && !name.startsWith("snapshot-")) {
+                        tasks.add(() -> {
+                            GameAnalytics analytics = new GameAnalytics();
+                            try (BufferedReader reader = Files.newBufferedReader(file,
+                                    StandardCharsets.ISO_8859_1)) {
+                                String line;
+                                while ((line = reader.readLine()) != null) {
+                                    analytics.logLine(line.strip());
+                                }
+                            }
+                            return analytics;
+                        });
+                    }
+                }
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        GameAnalytics total = new GameAnalytics();
+        try {
+            for (Future<GameAnalytics> result : pool.invokeAll(tasks)) {
+                total.merge(result.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        } finally {
+            pool.shutdown();
+        }
+        total.report(System.out);
+        System.out.println(tasks.size() + " sources in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private static boolean isJournal(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.anyMatch(file -> file.getFileName().toString().startsWith("journal-"));
+        }
+    }
+
+    /**
+     * Takes in a line of the auto player's log.
+     *
+     * @param line the line without its line separator
+     */
+    public void logLine(String line) {
+        if (line.equals("Auto play: got started.")) {
+            logBoard = new GameEngine();
+            start(LOG, logBoard);
+        } else if (line.equals("starting a new game...")) {
+            start(LOG, Board.create(logBoard.rows(), logBoard.cols(), logBoard.k()));
+        } else if (line.startsWith("playing on Board ")) {
+            try {
+                logBoard = Board.parse(line.substring("playing on Board ".length()));
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+            start(LOG, logBoard);
+        } else if (line.startsWith("received message = ")) {
+            move(LOG, line.substring("received message = ".length()));
+        } else if (line.startsWith("next movement of auto player ")) {
+            move(LOG, line.substring("next movement of auto player ".length()));
+        } else if (line.equals("Quit the game...") || line.equals("Lost the local user...")) {
+            end(LOG);
+        }
+    }
+
+    /**
+     * Takes in a record of a GameServer journal.
+     *
+     * @param msg the record, which may be reused once this returns
+     */
+    public void record(Message msg) {
+        switch (msg.type) {
+            case Message.JOIN:
+                start(msg.gameId, new GameEngine());
+                break;
+            case Message.CONFIG:
+                try {
+                    start(msg.gameId, msg.newBoard());
+                } catch (IllegalArgumentException e) {
+                    // not a board
+                }
+                break;
+            case Message.NEW_GAME:
+            case Message.SWITCH_TURN:
+                Game game = live.get(msg.gameId);
+                Board board = (game == null) ? new GameEngine() : game.board;
+                start(msg.gameId, Board.create(board.rows(), board.cols(), board.k()));
+                break;
+            case Message.MOVE:
+                move(msg.gameId, msg.cell, msg.mark);
+                break;
+            case Message.EXIT_GAME:
+                end(msg.gameId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Starts following a game on an empty board, dropping the one before.
+     */
+    private void start(int id, Board board) {
+        board.clear();
+        Game old = live.put(id, new Game(board));
+        if (old != null) {
+            abandon(old);
+        }
+    }
+
+    /**
+     * Applies a logged move, (e.g., "4 O").
+     */
+    private void move(int id, String move) {
+        int space = move.indexOf(' ');
+        if (space <= 0 || space != move.length() - 2) {
+            return;
+        }
+        try {
+            move(id, Integer.parseInt(move.substring(0, space)), (byte) move.charAt(space + 1));
+        } catch (NumberFormatException e) {
+            // not a move
+        }
+    }
+
+    /**
+     * Applies a move, and tallies the game once it is over.
+     */
+    private void move(int id, int cell, byte mark) {
+        Game game = live.get(id);
+        if (game == null || (mark != 'O' && mark != 'X')
+                || !game.board.play(cell, GameEngine.player(mark))) {
+            return;
+        }
+        if (game.length++ == 0) {
+            game.opening = cell;
+        }
+        if (!game.board.isOver()) {
+            return;
+        }
+        live.remove(id);
+        games++;
+        moves += game.length;
+        Board board = game.board;
+        long[] counts = openings.computeIfAbsent(size(board), size -> new long[board.cells()]);
+        counts[game.opening]++;
+        if (board.winner() == GameEngine.O) {
+            oWins++;
+            losses.offer(position(board), 1);
+        } else if (board.winner() == GameEngine.X) {
+            xWins++;
+        }
+    }
+
+    /**
+     * Stops following a game that was quit.
+     */
+    private void end(int id) {
+        Game game = live.remove(id);
+        if (game != null) {
+            abandon(game);
+        }
+    }
+
+    private void abandon(Game game) {
+        if (game.length > 0) {
+            abandoned++;
+        }
+    }
+
+    /**
+     * Adds another's aggregates to mine. Games the other is still following
+     * are left out.
+     *
+     * @param other the aggregates of another source
+     * @return this
+     */
+    public GameAnalytics merge(GameAnalytics other) {
+        games += other.games;
+        oWins += other.oWins;
+        xWins += other.xWins;
+        abandoned += other.abandoned;
+        moves += other.moves;
+        for (Map.Entry<String, long[]> size : other.openings.entrySet()) {
+            long[] counts = openings.computeIfAbsent(size.getKey(),
+                    key -> new long[size.getValue().length]);
+            for (int cell = 0; cell < counts.length; cell++) {
+                counts[cell] += size.getValue()[cell];
+            }
+        }
+        losses.merge(other.losses);
+        return this;
+    }
+
+    /**
+     * Prints the aggregates.
+     */
+    public void report(PrintStream out) {
+        long draws = games - oWins - xWins;
+        out.printf("games %d: O won %.1f%%, X won %.1f%%, drawn %.1f%%; %d abandoned, "
+                        + "%d in progress%n", games, percent(oWins, games),
+                percent(xWins, games), percent(draws, games), abandoned, live.size());
+        out.printf("average length %.2f moves%n", (games == 0) ? 0.0 : (double) moves / games);
+        for (Map.Entry<String, long[]> size : openings.entrySet()) {
+            long[] counts = size.getValue();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            // the five most frequent openings
+            StringBuilder top = new StringBuilder();
+            boolean[] shown = new boolean[counts.length];
+            for (int i = 0; i < Math.min(5, counts.length); i++) {
+                int best = -1;
+                for (int cell = 0; cell < counts.length; cell++) {
+                    if (!shown[cell] && counts[cell] > 0
+                            && (best < 0 || counts[cell] > counts[best])) {
+                        best = cell;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                shown[best] = true;
+                top.append(String.format(" %d:%.1f%%", best, percent(counts[best], total)));
+            }
+            out.println("openings on " + size.getKey() + ":" + top);
+        }
+        out.println("positions X lost in most often:");
+        for (Map.Entry<String, long[]> loss : losses.top()) {
+            out.printf("%8d (+-%d) %s%n", loss.getValue()[0], loss.getValue()[1], loss.getKey());
+        }
+    }
+
+    private static double percent(long part, long whole) {
+        return (whole == 0) ? 0.0 : 100.0 * part / whole;
+    }
+
+    private static String size(Board board) {
+        return board.rows() + "x" + board.cols() + "x" + board.k();
+    }
+
+    /**
+     * @return a board such as "3x3x3 OX./.O./X.O", row by row
+     */
+    private static String position(Board board) {
+        StringBuilder position = new StringBuilder(size(board)).append(' ');
+        for (int cell = 0; cell < board.cells(); cell++) {
+            if (cell > 0 && cell % board.cols() == 0) {
+                position.append('/');
+            }
+            int player = board.get(cell);
+            position.append((player == GameEngine.O) ? 'O' : (player == GameEngine.X) ? 'X' : '.');
+        }
+        return position.toString();
+    }
+
+    /**
+     * Is a Space-Saving summary: counts at most capacity keys, and a new
+     * key takes over the least frequent one, inheriting its count as error.
+     */
+    private static class TopK {
+        private final int capacity;
+        private final Map<String, long[]> counts = new HashMap<>(); // {count, error}
+
+        TopK(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void offer(String key, long n) {
+            long[] count = counts.get(key);
+            if (count != null) {
+                count[0] += n;
+                return;
+            }
+            if (counts.size() < capacity) {
+                counts.put(key, new long[]{n, 0});
+                return;
+            }
+            // capacity is small, so a scan beats keeping a heap up to date
+            Map.Entry<String, long[]> min = null;
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                if (min == null || entry.getValue()[0] < min.getValue()[0]) {
+                    min = entry;
+                }
+            }
+            long floor = min.getValue()[0];
+            counts.remove(min.getKey());
+            counts.put(key, new long[]{floor + n, floor});
+        }
+
+        /**
+         * Merges another summary in the mergeable Space-Saving way: a key
+         * missing from one side may have been counted up to that side's
+         * least count, so it gains that much in count and in error, and then
+         * the capacity most frequent keys are kept.
+         */
+        void merge(TopK other) {
+            long mine = floor();
+            long theirs = other.floor();
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                if (!other.counts.containsKey(entry.getKey())) {
+                    entry.getValue()[0] += theirs;
+                    entry.getValue()[1] += theirs;
+                }
+            }
+            for (Map.Entry<String, long[]> entry : other.counts.entrySet()) {
+                long[] count = counts.get(entry.getKey());
+                if (count != null) {
+                    count[0] += entry.getValue()[0];
+                    count[1] += entry.getValue()[1];
+                } else {
+                    counts.put(entry.getKey(), new long[]{entry.getValue()[0] + mine,
+                            entry.getValue()[1] + mine});
+                }
+            }
+            if (counts.size() > capacity) {
+                List<Map.Entry<String, long[]>> top = top();
+                for (Map.Entry<String, long[]> entry : top.subList(capacity, top.size())) {
+                    counts.remove(entry.getKey());
+                }
+            }
+        }
+
+        /**
+         * @return the most any key not held may have been counted, (i.e.,
+         * the least count once full, 0 before)
+         */
+        private long floor() {
+            if (counts.size() < capacity) {
+                return 0;
+            }
+            long floor = Long.MAX_VALUE;
+            for (long[] count : counts.values()) {
+                floor = Math.min(floor, count[0]);
+            }
+            return floor;
+        }
+
+        /**
+         * @return the keys, the most frequent first
+         */
+        List<Map.Entry<String, long[]>> top() {
+            List<Map.Entry<String, long[]>> top = new ArrayList<>(counts.entrySet());
+            top.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+            return top;
+        }
+    }
+}
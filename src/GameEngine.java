@@ -0,0 +1,188 @@
+/**
+ * GameEngine holds the rules and the board of a classic 3x3 tic-tac-toe game
+ * without any user interface, so that the Swing window, the auto player and
+ * GameServer all play by the same rules and a game can run headless.
+ * <p>
+ * The board is kept as two 9-bit masks, one per player, where bit i stands
+ * for cell i (0 through to 8, row by row). Whether a mask contains one of the
+ * eight winning lines is precomputed for all 512 masks, so a win check is a
+ * single array lookup.
+ *
+ * @author Soheli Sultana
+ */
+public class GameEngine implements Board {
+    public static final int CELLS = 9;  // #cells
+    public static final int O = 0;      // the former player
+    public static final int X = 1;      // the latter player
+    public static final int NONE = -1;  // an empty cell or no winner
+    public static final int FULL = (1 << CELLS) - 1;
+
+    // rows, columns and diagonals as cell masks
+    public static final int[] LINES = {
+            0007, 0070, 0700,  // rows
+            0111, 0222, 0444,  // columns
+            0421, 0124         // diagonals
+    };
+    private static final boolean[] WINNING = new boolean[1 << CELLS];
+
+    static {
+        for (int mask = 0; mask <= FULL; mask++) {
+            for (int line : LINES) {
+                if ((mask & line) == line) {
+                    WINNING[mask] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    private final int[] marks = new int[2]; // marks[O] and marks[X]
+
+    @Override
+    public int rows() {
+        return 3;
+    }
+
+    @Override
+    public int cols() {
+        return 3;
+    }
+
+    @Override
+    public int k() {
+        return 3;
+    }
+
+    @Override
+    public int cells() {
+        return CELLS;
+    }
+
+    /**
+     * Converts a mark to a player.
+     *
+     * @param mark "O" or "X"
+     * @return O or X
+     */
+    public static int player(String mark) {
+        return mark.equals("O") ? O : X;
+    }
+
+    /**
+     * Converts a mark to a player.
+     *
+     * @param mark 'O' or 'X'
+     * @return O or X
+     */
+    public static int player(byte mark) {
+        return mark == 'O' ? O : X;
+    }
+
+    /**
+     * Checks if a mask contains a winning line.
+     *
+     * @param mask a set of cells
+     * @return true if all three cells of a row, column or diagonal are in mask
+     */
+    public static boolean isWin(int mask) {
+        return WINNING[mask & FULL];
+    }
+
+    /**
+     * Marks a cell for a player.
+     *
+     * @param cell   a cell index (0 through to 8)
+     * @param player O or X
+     * @return true if marked, false if the cell is out of range or taken
+     */
+    @Override
+    public boolean play(int cell, int player) {
+        if (cell < 0 || cell >= CELLS || !isFree(cell)) {
+            return false;
+        }
+        marks[player] |= 1 << cell;
+        return true;
+    }
+
+    /**
+     * @param cell a cell index (0 through to 8)
+     * @return true if nobody has marked the cell
+     */
+    @Override
+    public boolean isFree(int cell) {
+        return ((marks[O] | marks[X]) & (1 << cell)) == 0;
+    }
+
+    /**
+     * @param cell a cell index (0 through to 8)
+     * @return O, X or NONE
+     */
+    @Override
+    public int get(int cell) {
+        int bit = 1 << cell;
+        if ((marks[O] & bit) != 0) {
+            return O;
+        }
+        return ((marks[X] & bit) != 0) ? X : NONE;
+    }
+
+    /**
+     * @param player O or X
+     * @return the mask of cells marked by player
+     */
+    public int mask(int player) {
+        return marks[player];
+    }
+
+    /**
+     * @return the mask of cells nobody has marked
+     */
+    public int freeMask() {
+        return ~(marks[O] | marks[X]) & FULL;
+    }
+
+    /**
+     * @param player O or X
+     * @return true if player has completed a line
+     */
+    @Override
+    public boolean hasWon(int player) {
+        return WINNING[marks[player]];
+    }
+
+    /**
+     * @return O or X if either has completed a line, otherwise NONE
+     */
+    @Override
+    public int winner() {
+        if (WINNING[marks[O]]) {
+            return O;
+        }
+        return WINNING[marks[X]] ? X : NONE;
+    }
+
+    /**
+     * @return true if every cell is marked
+     */
+    @Override
+    public boolean isFull() {
+        return (marks[O] | marks[X]) == FULL;
+    }
+
+    /**
+     * @return true if someone won or the board is full
+     */
+    @Override
+    public boolean isOver() {
+        return isFull() || winner() != NONE;
+    }
+
+    /**
+     * Clears the board for a new game.
+     */
+    @Override
+    public void clear() {
+        marks[O] = 0;
+        marks[X] = 0;
+    }
+}
@@ -0,0 +1,603 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * GameJournal makes GameServer's matches survive a crash. Every change to a
+ * match, (i.e., its start, a move, a cleared or resized board and its end),
+ * is appended as a fixed 16-byte record to a memory-mapped segment file, so
+ * an append is four stores into the page cache and survives the process
+ * dying right after it. Event loops append concurrently, each claiming its
+ * record's number with one getAndIncrement() as GameLogger does.
+ * <p>
+ * A committer thread commits in groups: it wakes up every -Dttt.journal.commit
+ * microseconds, (2000 by default), applies every record published since to
+ * a shadow copy of all live games and forces them to disk with one msync, so
+ * a machine crash loses at most that window, however many moves it held.
+ * Once it has committed every record claimed, it parks until the next
+ * append instead.
+ * <p>
+ * Whenever a segment of -Dttt.journal.segment records, (1 << 20 by default),
+ * fills up, the committer writes the shadow games to a compact snapshot and
+ * deletes the segments and the snapshot before it. Recovery loads the last
+ * snapshot and replays at most one segment behind it, which bounds restart
+ * time however long the server ran. It stops at the first record that is
+ * torn or missing, and then starts a fresh snapshot and segment, so nothing
+ * written after the tear can be mistaken for a valid record later on.
+ * <p>
+ * A record is: the game id, its type, mark and cell packed into an int, the
+ * low 32 bits of its number, and a check over those stored last with release
+ * semantics. A record is only valid if its number and check match.
+ *
+ * @author Soheli Sultana
+ */
+public class GameJournal {
+    private static final int RECORD = 16;          // bytes per record
+    private static final int MAGIC = 0x5454544a;   // "TTTJ", a snapshot's first int
+    private static final String SEGMENT = "journal-";
+    private static final String SNAPSHOT = "snapshot-";
+    private static final VarHandle INT =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Is a mapped segment file holding the records from base on.
+     */
+    private static class Segment {
+        final Path path;
+        final long base;           // the number of its first record
+        final int capacity;        // #records it holds
+        final MappedByteBuffer buffer;
+
+        Segment(Path path, long base, int capacity, MappedByteBuffer buffer) {
+            this.path = path;
+            this.base = base;
+            this.capacity = capacity;
+            this.buffer = buffer;
+        }
+
+        boolean holds(long lsn) {
+            return lsn >= base && lsn < base + capacity;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentRecords;
+    private final long commitNanos;
+    private final AtomicLong head;          // the number of the next record to claim
+    private volatile long committed;        // every record before it is on disk
+    private volatile Segment current;       // the segment being committed
+    private volatile Segment next;          // mapped ahead for appenders
+    // the committer's shadow of all live games, by game id
+    private final Map<Integer, Board> games = new HashMap<>();
+    private int maxGameId = 0;              // the highest game id ever started
+    private final Map<Integer, Board> recovered;
+    private final int recoveredMaxGameId;
+    private final Message msg = new Message(); // the committer's
+    private final Thread committer;
+    private volatile boolean closed = false;
+    private volatile boolean idle = false;  // T: the committer is parking
+
+    /**
+     * Opens a journal with the segment size and commit interval given by
+     * the system properties, recovering whatever it holds.
+     *
+     * @param dir the journal's directory, created if missing
+     */
+    public GameJournal(Path dir) throws IOException {
+        this(dir, Integer.getInteger("ttt.journal.segment", 1 << 20),
+                Integer.getInteger("ttt.journal.commit", 2000));
+    }
+
+    /**
+     * Opens a journal, recovering whatever it holds.
+     *
+     * @param dir            the journal's directory, created if missing
+     * @param segmentRecords #records per segment, (i.e., between snapshots)
+     * @param commitMicros   the committer's interval
+     */
+    public GameJournal(Path dir, int segmentRecords, int commitMicros) throws IOException {
+        if (segmentRecords < 1 || segmentRecords > Integer.MAX_VALUE / RECORD) {
+            throw new IllegalArgumentException("bad journal segment " + segmentRecords);
+        }
+        if (commitMicros < 1) {
+            throw new IllegalArgumentException("bad journal commit " + commitMicros);
+        }
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.commitNanos = commitMicros * 1000L;
+        Files.createDirectories(dir);
+
+        long lsn = recover();
+        recovered = new HashMap<>();
+        for (Map.Entry<Integer, Board> game : games.entrySet()) {
+            recovered.put(game.getKey(), copy(game.getValue()));
+        }
+        recoveredMaxGameId = maxGameId;
+        // start afresh behind a snapshot of what was recovered
+        writeSnapshot(lsn);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT)
+                        || (name.startsWith(SNAPSHOT) && number(name, SNAPSHOT) < lsn)) {
+                    Files.delete(file);
+                }
+            }
+        }
+        current = map(lsn);
+        next = map(lsn + segmentRecords);
+        head = new AtomicLong(lsn);
+        committed = lsn;
+
+        committer = new Thread(this::commit, "GameJournal");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * @return the live games found by recovery, by game id; the caller owns
+     * the boards
+     */
+    public Map<Integer, Board> recovered() {
+        return recovered;
+    }
+
+    /**
+     * @return the highest game id found by recovery, 0 if none
+     */
+    public int maxGameId() {
+        return recoveredMaxGameId;
+    }
+
+    /**
+     * @return the number of the first record not yet on disk
+     */
+    public long committed() {
+        return committed;
+    }
+
+    /**
+     * Appends a change to a game: a JOIN starts the game on a 3x3 board,
+     * a MOVE, NEW_GAME, SWITCH_TURN or CONFIG changes its board like
+     * GameServer does and an EXIT_GAME ends it. Only changes GameServer
+     * accepted may be appended, since recovery doesn't check them again.
+     *
+     * @param msg the change; its type, mark, gameId and cell are recorded
+     */
+    public void append(Message msg) {
+        if (closed) {
+            throw new IllegalStateException("journal closed");
+        }
+        long lsn = head.getAndIncrement();
+        Segment segment = segment(lsn);
+        int offset = (int) (lsn - segment.base) * RECORD;
+        int id = msg.gameId;
+        int body = (msg.type & 0xff) << 24 | (msg.mark & 0xff) << 16 | (msg.cell & 0xffff);
+        int number = (int) lsn;
+        INT.set(segment.buffer, offset, id);
+        INT.set(segment.buffer, offset + 4, body);
+        INT.set(segment.buffer, offset + 8, number);
+        // publishes the record to the committer
+        INT.setRelease(segment.buffer, offset + 12, check(id, body, number));
+        if (idle) {
+            LockSupport.unpark(committer);
+        }
+    }
+
+    /**
+     * Finds the segment a record goes to. Only if appenders run a whole
+     * segment ahead of the committer do they wait for it to map the next.
+     */
+    private Segment segment(long lsn) {
+        while (true) {
+            Segment segment = current;
+            if (segment.holds(lsn)) {
+                return segment;
+            }
+            segment = next;
+            if (segment != null && segment.holds(lsn)) {
+                return segment;
+            }
+            LockSupport.unpark(committer);
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Commits the records appended so far, writes a last snapshot and stops
+     * the committer. Appending afterwards throws.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Is the body of the committer. It raises idle before it looks at head
+     * a last time, and an appender looks at idle after claiming, so a record
+     * is never left behind a parked committer.
+     */
+    private void commit() {
+        try {
+            while (true) {
+                boolean last = closed;
+                drain();
+                if (last && committed == head.get()) {
+                    writeSnapshot(committed);
+                    deleteSnapshots(committed);
+                    break;
+                }
+                if (committed != head.get()) {
+                    LockSupport.parkNanos(this, commitNanos);
+                    continue;
+                }
+                idle = true;
+                if (committed == head.get() && !closed) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+            }
+        } catch (IOException e) {
+            System.err.println("GameJournal: " + e);
+        }
+    }
+
+    /**
+     * Applies every published record to the shadow games, in order, and
+     * forces them to disk with one msync per segment, moving on to the next
+     * segment whenever one fills up.
+     */
+    private void drain() throws IOException {
+        long lsn = committed;
+        Segment segment = current;
+        int from = (int) (lsn - segment.base) * RECORD;
+        while (true) {
+            if (lsn == segment.base + segment.capacity) {
+                segment.buffer.force(from, segment.capacity * RECORD - from);
+                committed = lsn;
+                rotate(lsn);
+                segment = current;
+                from = 0;
+            }
+            int offset = (int) (lsn - segment.base) * RECORD;
+            if (!read(segment.buffer, offset, lsn, msg)) {
+                break;
+            }
+            apply(msg);
+            lsn++;
+        }
+        int to = (int) (lsn - segment.base) * RECORD;
+        if (to > from) {
+            segment.buffer.force(from, to - from);
+            committed = lsn;
+        }
+    }
+
+    /**
+     * Snapshots the shadow games once a segment is full, switches appenders
+     * over to the segment mapped ahead and drops what the snapshot covers.
+     *
+     * @param lsn the number of the first record after the full segment
+     */
+    private void rotate(long lsn) throws IOException {
+        writeSnapshot(lsn);
+        Segment old = current;
+        current = next;
+        next = map(lsn + segmentRecords);
+        Files.deleteIfExists(old.path);
+        deleteSnapshots(lsn);
+    }
+
+    /**
+     * Deletes the snapshots a newer one replaces.
+     *
+     * @param lsn the number the newer snapshot is named after
+     */
+    private void deleteSnapshots(long lsn) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SNAPSHOT) && !name.endsWith(".tmp")
+                        && number(name, SNAPSHOT) < lsn) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a record if it is valid.
+     *
+     * @return false if the record is torn or not published yet
+     */
+    private static boolean read(MappedByteBuffer buffer, int offset, long lsn, Message msg) {
+        int check = (int) INT.getAcquire(buffer, offset + 12);
+        int id = (int) INT.get(buffer, offset);
+        int body = (int) INT.get(buffer, offset + 4);
+        int number = (int) INT.get(buffer, offset + 8);
+        if (number != (int) lsn || check != check(id, body, number)) {
+            return false;
+        }
+        msg.gameId = id;
+        msg.type = (byte) (body >>> 24);
+        msg.mark = (byte) (body >>> 16);
+        msg.cell = body & 0xffff;
+        return true;
+    }
+
+    /**
+     * @return a record's check, never 0, so a zero-filled record is invalid
+     */
+    private static int check(int id, int body, int number) {
+        int h = id * 0x9e3779b1 ^ body;
+        h = h * 0x85ebca6b ^ number;
+        h ^= h >>> 15;
+        return h | 1;
+    }
+
+    /**
+     * Applies a record to the shadow games.
+     */
+    private void apply(Message msg) {
+        Board board = games.get(msg.gameId);
+        switch (msg.type) {
+            case Message.JOIN:
+                games.put(msg.gameId, new GameEngine());
+                maxGameId = Math.max(maxGameId, msg.gameId);
+                break;
+            case Message.MOVE:
+                if (board != null) {
+                    board.play(msg.cell, GameEngine.player(msg.mark));
+                }
+                break;
+            case Message.NEW_GAME:
+            case Message.SWITCH_TURN:
+                if (board != null) {
+                    board.clear();
+                }
+                break;
+            case Message.CONFIG:
+                if (board != null) {
+                    games.put(msg.gameId, msg.newBoard());
+                }
+                break;
+            case Message.EXIT_GAME:
+                games.remove(msg.gameId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Loads the last snapshot and replays the records behind it.
+     *
+     * @return the number of the first record not recovered
+     */
+    private long recover() throws IOException {
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file); // a snapshot cut short
+                } else if (name.startsWith(SNAPSHOT)) {
+                    snapshots.put(number(name, SNAPSHOT), file);
+                }
+            }
+        }
+        long lsn = 0;
+        for (Path snapshot : snapshots.descendingMap().values()) {
+            try {
+                lsn = readSnapshot(snapshot);
+                break;
+            } catch (IOException e) {
+                System.err.println("GameJournal: skipping " + snapshot + ": " + e);
+                games.clear();
+                maxGameId = 0;
+            }
+        }
+        return scan(dir, lsn, false, this::apply);
+    }
+
+    /**
+     * Reads a journal's valid records in order, from the latest segment
+     * holding each record in turn, so a segment left behind by an earlier
+     * crash never wins over a newer one. Records may be read while the
+     * journal is being appended to, (e.g., to tail it).
+     *
+     * @param dir      the journal's directory
+     * @param lsn      the number of the first record to read
+     * @param skipGaps true to go on with the next segment when no segment
+     *                 holds a record, (i.e., it was deleted), false to stop
+     * @param sink     gets every record; the message is reused
+     * @return the number of the first record not read, (i.e., torn, not yet
+     * published or missing)
+     */
+    static long scan(Path dir, long lsn, boolean skipGaps, Consumer<Message> sink)
+            throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT)) {
+                    segments.put(number(name, SEGMENT), file);
+                }
+            }
+        }
+        Message msg = new Message();
+        while (true) {
+            Map.Entry<Long, Path> entry = segments.floorEntry(lsn);
+            if (entry != null) {
+                try (FileChannel channel = FileChannel.open(entry.getValue(),
+                        StandardOpenOption.READ)) {
+                    int capacity = (int) (channel.size() / RECORD);
+                    long end = entry.getKey() + capacity;
+                    if (lsn < end) {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                0, (long) capacity * RECORD);
+                        for (; lsn < end; lsn++) {
+                            int offset = (int) (lsn - entry.getKey()) * RECORD;
+                            if (!read(buffer, offset, lsn, msg)) {
+                                return lsn;
+                            }
+                            sink.accept(msg);
+                        }
+                        continue; // on to the next segment
+                    }
+                } catch (NoSuchFileException e) {
+                    // deleted since listed
+                    segments.remove(entry.getKey());
+                    continue;
+                }
+            }
+            Long later = segments.higherKey(lsn);
+            if (!skipGaps || later == null) {
+                return lsn;
+            }
+            lsn = later;
+        }
+    }
+
+    /**
+     * Writes the shadow games to a snapshot, first to a temporary file that
+     * is synced and then renamed, so a snapshot is either whole or absent.
+     *
+     * @param lsn the number of the first record the snapshot doesn't cover
+     */
+    private void writeSnapshot(long lsn) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT + lsn + ".tmp");
+        FileOutputStream file = new FileOutputStream(tmp.toFile());
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(file), crc))) {
+            out.writeInt(MAGIC);
+            out.writeLong(lsn);
+            out.writeInt(maxGameId);
+            out.writeInt(games.size());
+            for (Map.Entry<Integer, Board> game : games.entrySet()) {
+                Board board = game.getValue();
+                out.writeInt(game.getKey());
+                out.writeByte(board.rows());
+                out.writeByte(board.cols());
+                out.writeByte(board.k());
+                for (int cell = 0; cell < board.cells(); cell++) {
+                    out.writeByte(board.get(cell) + 1);
+                }
+            }
+            // the checksum covers everything before it
+            out.flush();
+            out.writeLong(crc.getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT + lsn), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot into the shadow games.
+     *
+     * @return the number of the first record the snapshot doesn't cover
+     */
+    private long readSnapshot(Path snapshot) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream file = Files.newInputStream(snapshot);
+             DataInputStream in = new DataInputStream(new CheckedInputStream(
+                     new BufferedInputStream(file), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a snapshot");
+            }
+            long lsn = in.readLong();
+            maxGameId = in.readInt();
+            int nGames = in.readInt();
+            for (int i = 0; i < nGames; i++) {
+                int id = in.readInt();
+                Board board;
+                try {
+                    board = Board.create(in.readByte(), in.readByte(), in.readByte());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("bad board", e);
+                }
+                for (int cell = 0; cell < board.cells(); cell++) {
+                    int player = in.readByte() - 1;
+                    if (player != GameEngine.NONE) {
+                        board.play(cell, player);
+                    }
+                }
+                games.put(id, board);
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("bad checksum");
+            }
+            return lsn;
+        }
+    }
+
+    /**
+     * Creates and maps a new segment.
+     *
+     * @param base the number of its first record
+     */
+    private Segment map(long base) throws IOException {
+        Path path = dir.resolve(SEGMENT + base);
+        Files.deleteIfExists(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) segmentRecords * RECORD);
+            return new Segment(path, base, segmentRecords, buffer);
+        }
+    }
+
+    /**
+     * @return a copy of a board
+     */
+    private static Board copy(Board board) {
+        Board copy = Board.create(board.rows(), board.cols(), board.k());
+        for (int cell = 0; cell < board.cells(); cell++) {
+            if (board.get(cell) != GameEngine.NONE) {
+                copy.play(cell, board.get(cell));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return the record number in a segment's or snapshot's file name
+     */
+    private static long number(String name, String prefix) {
+        String digits = name.substring(prefix.length());
+        int dot = digits.indexOf('.');
+        return Long.parseLong((dot < 0) ? digits : digits.substring(0, dot));
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * GameLogger writes log lines to a file from a background thread, so that
+ * logging never puts file I/O on a move's path. Callers hand over a constant
+ * text and, optionally, a message, which are copied into a slot of a ring
+ * preallocated at start-up; nothing is formatted or allocated until the
+ * background thread drains the ring, which it does in batches with one flush
+ * per batch. An idle drainer parks until a caller hands it a line.
+ * <p>
+ * The ring holds -Dttt.log.capacity lines, (4096 by default, rounded up to a
+ * power of two). When it is full, -Dttt.log.policy=drop, the default, drops
+ * the line and counts it, while -Dttt.log.policy=block waits for room.
+ *
+ * @author Soheli Sultana
+ */
+public class GameLogger {
+    /**
+     * Is one line waiting in the ring.
+     */
+    private static class Slot {
+        volatile long published = -1; // the sequence number stored here
+        String text;
+        boolean hasMessage;
+        final Message msg = new Message();
+    }
+
+    private final Slot[] ring;
+    private final int mask;
+    private final boolean block;               // T: wait when full, F: drop
+    private final AtomicLong head = new AtomicLong(); // the next sequence to claim
+    private volatile long tail = 0;            // the next sequence to drain
+    private final AtomicLong dropped = new AtomicLong();
+    private final Writer out;
+    private final Thread drainer;
+    private volatile boolean closed = false;
+    private volatile boolean idle = false;     // T: the drainer is parking
+
+    /**
+     * Opens a log file with the capacity and policy given by the system
+     * properties.
+     *
+     * @param fileName the file to write, truncated if it exists
+     */
+    public GameLogger(String fileName) throws IOException {
+        this(fileName, Integer.getInteger("ttt.log.capacity", 4096),
+                "block".equals(System.getProperty("ttt.log.policy")));
+    }
+
+    /**
+     * Opens a log file.
+     *
+     * @param fileName the file to write, truncated if it exists
+     * @param capacity #lines the ring holds, rounded up to a power of two
+     * @param block    true to wait when the ring is full, false to drop
+     */
+    public GameLogger(String fileName, int capacity, boolean block) throws IOException {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("bad log capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        mask = size - 1;
+        this.block = block;
+        out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(fileName), StandardCharsets.UTF_8));
+        drainer = new Thread(this::drain, "GameLogger");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Logs a line.
+     *
+     * @param text the line, preferably a constant
+     */
+    public void log(String text) {
+        publish(text, null);
+    }
+
+    /**
+     * Logs a line ending with a message. The message is copied, so the
+     * caller may refill it right away.
+     *
+     * @param text the beginning of the line, preferably a constant
+     * @param msg  the message to append
+     */
+    public void log(String text, Message msg) {
+        publish(text, msg);
+    }
+
+    /**
+     * @return #lines dropped because the ring was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void publish(String text, Message msg) {
+        long seq = claim();
+        if (seq < 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+        Slot slot = ring[(int) seq & mask];
+        slot.text = text;
+        slot.hasMessage = (msg != null);
+        if (msg != null) {
+            slot.msg.copy(msg);
+        }
+        slot.published = seq; // hands the slot over to the drainer
+        if (idle) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    /**
+     * Claims the next free slot.
+     *
+     * @return its sequence number, or -1 if the ring is full or closed and
+     * lines are to be dropped
+     */
+    private long claim() {
+        while (!closed) {
+            long seq = head.get();
+            if (seq - tail >= ring.length) {
+                if (!block) {
+                    return -1;
+                }
+                LockSupport.unpark(drainer);
+                Thread.onSpinWait();
+                continue;
+            }
+            if (head.compareAndSet(seq, seq + 1)) {
+                return seq;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Is the body of the drainer: writes every published line in order,
+     * flushes once per batch and parks while the ring is empty. It raises
+     * idle before it looks at the ring a last time, and a caller looks at
+     * idle after publishing, so a line is never left behind a parked
+     * drainer.
+     */
+    private void drain() {
+        long reported = 0; // #drops already written to the file
+        try {
+            while (true) {
+                long next = tail;
+                Slot slot;
+                boolean wrote = false;
+                while ((slot = ring[(int) next & mask]).published == next) {
+                    out.write(slot.text);
+                    if (slot.hasMessage) {
+                        out.write(slot.msg.toString());
+                    }
+                    out.write(System.lineSeparator());
+                    slot.text = null;
+                    tail = ++next; // frees the slot
+                    wrote = true;
+                }
+                long drops = dropped.get();
+                if (drops != reported) {
+                    out.write("... dropped " + (drops - reported) + " lines"
+                            + System.lineSeparator());
+                    reported = drops;
+                    wrote = true;
+                }
+                if (wrote) {
+                    out.flush();
+                }
+                if (closed && tail == head.get()) {
+                    break;
+                }
+                idle = true;
+                if (ring[(int) next & mask].published != next && !closed) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+            }
+        } catch (IOException e) {
+            System.err.println("GameLogger: " + e);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * Stops accepting lines, writes out the ones already logged and closes
+     * the file.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
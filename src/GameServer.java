@@ -0,0 +1,907 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * GameServer hosts many tic-tac-toe matches on a handful of selector-driven
+ * event loops. Each OnlineTicTacToe client simply connects to the server's
+ * port as if it were its counterpart; two consecutive clients are paired into
+ * a match and every message one of them sends (a move, "NewGame",
+ * "SwitchTurn" or "ExitGame") is relayed to the other. Idle sockets cost
+ * nothing, since the loops sleep in Selector.select() until a player moves.
+ * <p>
+ * Messages are decoded with MessageCodec and re-encoded in whichever format
+ * the receiving player speaks, so a player who negotiated the binary format
+ * can play against one who still speaks the legacy one. Each match keeps its
+ * board, 3x3 unless a player announces another size with a CONFIG. A move
+ * onto a taken cell, or a size no board can have, is not relayed but ends
+ * the match: both players get an EXIT_GAME and are disconnected.
+ * <p>
+ * Players wait for a counterpart in a lobby run by the thread that accepts
+ * them. By default any two players are paired in arrival order. With the
+ * "lobby" option, a player first sends a JOIN with its rating and waits in
+ * the queue of its rating bucket, (i.e., ratings divided by
+ * -Dttt.lobby.bucket, 100 by default); joining either finds a counterpart
+ * at the head of that queue or becomes its tail, both in O(1), and both
+ * players get a JOIN back telling their mark. A player leaving the lobby is
+ * removed from its queue in O(1) as well.
+ * <p>
+ * Like AutoPlayerService, the server also listens at the Unix domain socket
+ * standing for its port, unless -Dttt.transport=tcp is given.
+ * <p>
+ * With -Dttt.journal=DIR, every match's start, accepted changes to its board
+ * and end are appended to a GameJournal in that directory. A restarted
+ * server recovers the matches that were live when it died, and with the
+ * "lobby" option their two players may come back by sending a JOIN with the
+ * match's gameId and their mark instead of a rating. Once both are back,
+ * each gets a JOIN telling its mark, followed by the board: a CONFIG unless
+ * it is 3x3, a NEW_GAME and a MOVE for every marked cell. A last JOIN tells
+ * whose turn it is by its cell, (i.e., 'O' or 'X'). A recovered match that
+ * isn't resumed within -Dttt.journal.resume seconds of the restart, (300 by
+ * default), is journaled as ended and its waiting player, if any, gets an
+ * EXIT_GAME.
+ * <p>
+ * With the "lobby" option, any number of spectators may watch a match by
+ * sending a WATCH with its gameId. A spectator first gets the board the
+ * same way, and then every message the players exchange, up to the
+ * EXIT_GAME that ends the match. Each message is encoded once into the
+ * match's feed, a direct ring buffer that every spectator's socket writes
+ * from in place. A spectator who falls -Dttt.spectate.frames messages
+ * behind, (256 by default), skips to a fresh board, and one who can't even
+ * take that is dropped, so spectators never hold up the players.
+ *
+ * @author Soheli Sultana
+ */
+public class GameServer {
+    private static final int BUFSIZE = 1024;    // per-player read buffer
+    private static final int OUTSIZE = 4096;    // per-player write buffer
+    private static final int BACKLOG = 4096;    // connections the kernel may hold for accept()
+    private static final int BUCKET = Integer.getInteger("ttt.lobby.bucket", 100);
+    // how long recovered matches wait for their players, in seconds
+    private static final long RESUME = Long.getLong("ttt.journal.resume", 300);
+    // a match's feed: the messages a spectator may lag behind, in bytes
+    private static final int FEED = MessageCodec.FRAME_SIZE
+            * Integer.getInteger("ttt.spectate.frames", 256);
+    // a spectator's write buffer: the largest board, (i.e., a CONFIG, a
+    // NEW_GAME and a MOVE per cell)
+    private static final int SNAPSHOT = MessageCodec.FRAME_SIZE
+            * (MnkBoard.MAX_SIZE * MnkBoard.MAX_SIZE + 2);
+
+    private final ServerSocketChannel server;
+    private ServerSocketChannel local = null; // the Unix domain socket, if any
+    private final Selector selector;      // the lobby's: new players and the server socket
+    private final EventLoop[] loops;
+    private final boolean rated;          // T: players send a JOIN, F: paired on arrival
+    // the players waiting for a counterpart, by rating bucket, oldest first
+    private final Map<Integer, LinkedHashSet<Seat>> queues = new HashMap<>();
+    private final GameJournal journal;    // null unless -Dttt.journal is given
+    // the recovered matches nobody has come back to, by game id
+    private final Map<Integer, Board> recovered = new HashMap<>();
+    // the players who came back to a recovered match before their counterpart
+    private final Map<Integer, Seat> resuming = new HashMap<>();
+    private long expiry = 0;              // System.nanoTime() when recovered matches expire
+    // the loop of every match being played, for spectators to find it
+    private final Map<Integer, EventLoop> playing = new ConcurrentHashMap<>();
+    private final Message msg = new Message(); // reused by the lobby
+    private int nextLoop = 0;             // round-robin index into loops
+    private int nextGameId = 1;           // the id of the next match
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java [-Dttt.lobby.bucket=WIDTH] [-Dttt.journal=DIR] "
+                + "[-Dttt.journal.resume=SECONDS] GameServer ipPort(>=5000) [#eventLoops] [lobby]");
+        System.exit(-1);
+    }
+
+    /**
+     * Starts a game server.
+     *
+     * @param args args[0]: the port to listen at, (args[1]: #event loops,
+     *             args[2]: "lobby" to match players by rating)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            usage();
+        }
+        int port = 0;
+        int nLoops = Runtime.getRuntime().availableProcessors();
+        try {
+            port = Integer.parseInt(args[0]);
+            if (args.length >= 2) {
+                nLoops = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (port < 5000 || nLoops < 1 || BUCKET < 1 || RESUME < 1
+                || FEED < MessageCodec.FRAME_SIZE
+                || (args.length == 3 && !args[2].equals("lobby"))) {
+            usage();
+        }
+        try {
+            Metrics.start();
+            GameJournal journal = null;
+            String dir = System.getProperty("ttt.journal");
+            if (dir != null) {
+                journal = new GameJournal(Path.of(dir));
+                System.err.println("GameServer: recovered " + journal.recovered().size()
+                        + " matches from " + dir);
+                // commit and snapshot what is left on a normal shutdown
+                Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+            }
+            new GameServer(port, nLoops, args.length == 3, journal).serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Binds the server port and starts the event loops.
+     *
+     * @param port   the port to listen at
+     * @param nLoops the number of event-loop threads
+     * @param rated  true to wait for each player's JOIN and match by rating,
+     *               false to pair players in arrival order
+     */
+    public GameServer(int port, int nLoops, boolean rated) throws IOException {
+        this(port, nLoops, rated, null);
+    }
+
+    /**
+     * Binds the server port and starts the event loops, journaling every
+     * match and taking over the matches the journal recovered.
+     *
+     * @param port    the port to listen at
+     * @param nLoops  the number of event-loop threads
+     * @param rated   true to wait for each player's JOIN and match by rating,
+     *                false to pair players in arrival order
+     * @param journal the journal, or null for none
+     */
+    public GameServer(int port, int nLoops, boolean rated, GameJournal journal)
+            throws IOException {
+        this.rated = rated;
+        this.journal = journal;
+        if (journal != null) {
+            recovered.putAll(journal.recovered());
+            nextGameId = journal.maxGameId() + 1;
+            expiry = System.nanoTime() + RESUME * 1_000_000_000L;
+        }
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), BACKLOG);
+        server.configureBlocking(false);
+        selector = Selector.open();
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        if (Transport.localPreferred()) {
+            try {
+                local = ChannelTransport.listen(port);
+                local.configureBlocking(false);
+                local.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException | UnsupportedOperationException e) {
+                // TCP only
+            }
+        }
+        loops = new EventLoop[nLoops];
+        for (int i = 0; i < nLoops; i++) {
+            loops[i] = new EventLoop(i, journal, playing);
+            loops[i].start();
+        }
+    }
+
+    /**
+     * Is the body of the lobby: accepts players forever, reads them until
+     * they join and pairs them. Like the event loops, it sleeps in
+     * Selector.select() while nobody arrives, however many are waiting,
+     * though no longer than until the recovered matches expire.
+     */
+    public void serve() throws IOException {
+        while (true) {
+            long left = expiry - System.nanoTime();
+            if (!recovered.isEmpty() && left <= 0) {
+                expire();
+            }
+            if (recovered.isEmpty()) {
+                selector.select();
+            } else {
+                selector.select(Math.max(1, left / 1_000_000));
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isAcceptable()) {
+                    accept((ServerSocketChannel) key.channel());
+                    continue;
+                }
+                Seat seat = (Seat) key.attachment();
+                try {
+                    if (key.isValid() && key.isReadable()) {
+                        admit(seat);
+                    }
+                } catch (IOException e) {
+                    leave(seat);
+                    try {
+                        seat.channel.close();
+                    } catch (IOException ioe) {
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel listener) throws IOException {
+        SocketChannel client;
+        while ((client = listener.accept()) != null) {
+            client.configureBlocking(false);
+            if (listener == server) {
+                client.socket().setTcpNoDelay(true);
+            }
+            Seat seat = new Seat(client);
+            seat.key = client.register(selector, SelectionKey.OP_READ, seat);
+            if (!rated) {
+                join(seat, 0);
+            }
+        }
+    }
+
+    /**
+     * Reads a player who hasn't got a counterpart yet. Only HELLO and JOIN
+     * are handled here; whatever follows a JOIN is left in the buffer for
+     * the player's event loop.
+     */
+    private void admit(Seat seat) throws IOException {
+        if (seat.channel.read(seat.in) < 0) {
+            throw new IOException("left the lobby");
+        }
+        seat.in.flip();
+        int rating = -1;
+        int resume = 0; // the game id of a recovered match to come back to
+        int watch = 0;  // the game id of a match to watch
+        while (rating < 0 && resume == 0 && watch == 0
+                && MessageCodec.decode(seat.in, msg)) {
+            Metrics.MESSAGES_IN.increment();
+            if (msg.type == Message.HELLO) {
+                seat.binary = true;
+                msg.gameId = 0;
+                msg.cell = MessageCodec.VERSION;
+                MessageCodec.encode(msg, true, seat.out);
+                Metrics.MESSAGES_OUT.increment();
+                // a handful of bytes always fit a fresh socket; if not, the
+                // event loop writes the rest
+                seat.out.flip();
+                seat.channel.write(seat.out);
+                seat.out.compact();
+            } else if (msg.type == Message.WATCH && msg.gameId != 0 && seat.queue == null) {
+                seat.binary = true;
+                watch = msg.gameId;
+            } else if (msg.type == Message.JOIN && msg.gameId != 0) {
+                seat.binary = true;
+                seat.joined = true;
+                seat.mark = msg.mark;
+                resume = msg.gameId;
+            } else if (msg.type == Message.JOIN && rated && seat.queue == null) {
+                // only a binary peer can send a JOIN
+                seat.binary = true;
+                seat.joined = true;
+                rating = Math.max(0, msg.cell);
+            }
+            // anything else has nobody to go to yet
+        }
+        seat.in.compact();
+        if (!seat.in.hasRemaining()) {
+            throw new IOException("message too long");
+        }
+        if (rating >= 0) {
+            join(seat, rating);
+        } else if (resume != 0) {
+            resume(seat, resume);
+        } else if (watch != 0) {
+            EventLoop loop = playing.get(watch);
+            if (loop == null) {
+                throw new IOException("no match " + watch + " to watch");
+            }
+            seat.key.cancel();
+            loop.watch(watch, seat);
+        }
+    }
+
+    /**
+     * Pairs a player with the oldest one waiting in its rating bucket, or
+     * queues it if there is none. A bucket's queue only exists while
+     * somebody waits in it, so far-flung ratings don't pile up empty ones.
+     */
+    private void join(Seat seat, int rating) {
+        int bucket = rating / BUCKET;
+        LinkedHashSet<Seat> queue = queues.get(bucket);
+        if (queue == null) {
+            queue = new LinkedHashSet<>();
+            queues.put(bucket, queue);
+            seat.bucket = bucket;
+            seat.queue = queue;
+            queue.add(seat);
+            return;
+        }
+        Iterator<Seat> waiting = queue.iterator();
+        Seat former = waiting.next();
+        waiting.remove();
+        if (queue.isEmpty()) {
+            queues.remove(bucket);
+        }
+        former.queue = null;
+        // the loop takes both players over from the lobby's selector
+        former.key.cancel();
+        seat.key.cancel();
+        // both players of a match live on the same loop, so that relaying
+        // a move never crosses threads
+        playing.put(nextGameId, loops[nextLoop]);
+        loops[nextLoop].startMatch(nextGameId++, former, seat, null);
+        nextLoop = (nextLoop + 1) % loops.length;
+    }
+
+    /**
+     * Brings a player back to a recovered match, which restarts once the
+     * counterpart is back as well.
+     *
+     * @param gameId the id of the match
+     */
+    private void resume(Seat seat, int gameId) throws IOException {
+        if (seat.mark != 'O' && seat.mark != 'X') {
+            throw new IOException("no mark to resume with");
+        }
+        Seat waiting = resuming.get(gameId);
+        if (waiting == null) {
+            if (!recovered.containsKey(gameId)) {
+                throw new IOException("no match " + gameId + " to resume");
+            }
+            seat.resume = gameId;
+            resuming.put(gameId, seat);
+            return;
+        }
+        if (waiting.mark == seat.mark) {
+            throw new IOException("mark " + (char) seat.mark + " already back");
+        }
+        resuming.remove(gameId);
+        waiting.resume = 0;
+        waiting.key.cancel();
+        seat.key.cancel();
+        Board board = recovered.remove(gameId);
+        Seat o = (seat.mark == 'O') ? seat : waiting;
+        playing.put(gameId, loops[nextLoop]);
+        loops[nextLoop].startMatch(gameId, o, (o == seat) ? waiting : seat, board);
+        nextLoop = (nextLoop + 1) % loops.length;
+    }
+
+    /**
+     * Ends the recovered matches nobody came back to in time, journaling
+     * their end so that the next restart doesn't recover them again. A
+     * player still waiting for its counterpart is sent an EXIT_GAME.
+     */
+    private void expire() {
+        for (int gameId : recovered.keySet()) {
+            msg.gameId = gameId;
+            msg.set(Message.EXIT_GAME, (byte) 0, 0);
+            journal.append(msg);
+            Seat waiting = resuming.remove(gameId);
+            if (waiting != null) {
+                waiting.resume = 0;
+                try {
+                    if (MessageCodec.encode(msg, true, waiting.out)) {
+                        waiting.out.flip();
+                        waiting.channel.write(waiting.out);
+                    }
+                    waiting.channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        System.err.println("GameServer: " + recovered.size()
+                + " recovered matches expired unclaimed");
+        recovered.clear();
+    }
+
+    /**
+     * Removes a player who left from its queue.
+     */
+    private void leave(Seat seat) {
+        if (seat.queue != null) {
+            seat.queue.remove(seat);
+            if (seat.queue.isEmpty()) {
+                queues.remove(seat.bucket);
+            }
+            seat.queue = null;
+        }
+        if (seat.resume != 0) {
+            resuming.remove(seat.resume);
+            seat.resume = 0;
+        }
+    }
+
+    /**
+     * Is the state both sides of a match share.
+     */
+    private static class Match {
+        final int gameId;
+        Board board = new GameEngine();
+        final List<Seat> spectators = new ArrayList<>();
+        ByteBuffer feed = null; // the frames sent to spectators, a ring of FEED bytes
+        long fed = 0;           // #bytes ever written to feed
+
+        Match(int gameId) {
+            this.gameId = gameId;
+        }
+    }
+
+    /**
+     * Is one side of a match.
+     */
+    private static class Seat {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(BUFSIZE);
+        ByteBuffer out = ByteBuffer.allocateDirect(OUTSIZE); // write mode
+        boolean binary = false; // T: this player negotiated the binary format
+        boolean joined = false; // T: this player joined the lobby with a JOIN
+        LinkedHashSet<Seat> queue = null; // the lobby queue this player waits in
+        int bucket = 0;         // the rating bucket of that queue
+        byte mark = 0;          // 'O' or 'X' when coming back to a recovered match
+        int resume = 0;         // the recovered match this player waits in
+        boolean spectator = false; // T: watches its match rather than playing
+        long sent = 0;          // a spectator's #bytes of its match's feed written
+        ByteBuffer view = null; // a spectator's own view of its match's feed
+        Match match = null;
+        SelectionKey key = null;
+        Seat peer = null;
+
+        Seat(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Is an event-loop thread that owns a selector and all the matches
+     * registered with it.
+     */
+    private static class EventLoop extends Thread {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Message msg = new Message(); // reused for every message
+        private final GameJournal journal;         // null for none
+        private final Map<Integer, Match> matches = new HashMap<>(); // mine, by game id
+        private final Map<Integer, EventLoop> playing; // the server's, shared by all loops
+
+        EventLoop(int id, GameJournal journal, Map<Integer, EventLoop> playing)
+                throws IOException {
+            super("GameServer-loop-" + id);
+            setDaemon(true);
+            selector = Selector.open();
+            this.journal = journal;
+            this.playing = playing;
+        }
+
+        /**
+         * Hands a newly paired match over to this loop. The former player
+         * plays "O" and moves first, while the latter plays "X" and waits.
+         * Players who joined with a JOIN are told their mark by a JOIN back;
+         * any other former player is asked to switch turn, since it starts
+         * as "X". Players coming back to a recovered match are sent its
+         * board after their JOIN, and then whose turn it is.
+         *
+         * @param gameId the id of the match
+         * @param a      the player who waited longer, or "O" of a recovered match
+         * @param b      the player who arrived second
+         * @param board  the board of a recovered match, null for a new one
+         */
+        void startMatch(int gameId, Seat a, Seat b, Board board) {
+            tasks.add(() -> {
+                Metrics.ACTIVE_GAMES.increment();
+                Match match = new Match(gameId);
+                matches.put(gameId, match);
+                msg.gameId = gameId;
+                if (board != null) {
+                    match.board = board;
+                } else if (journal != null) {
+                    journal.append(msg.set(Message.JOIN, (byte) 0, 0));
+                }
+                a.match = match;
+                b.match = match;
+                a.peer = b;
+                b.peer = a;
+                try {
+                    register(a);
+                    register(b);
+                } catch (IOException e) {
+                    close(a);
+                    return;
+                }
+                msg.gameId = gameId;
+                send(a, a.joined ? msg.set(Message.JOIN, (byte) 'O', 0)
+                        : msg.set(Message.SWITCH_TURN, (byte) 0, 0));
+                try {
+                    if (b.joined) {
+                        send(b, msg.set(Message.JOIN, (byte) 'X', 0));
+                    } else {
+                        flush(b); // a HELLO the lobby couldn't write
+                    }
+                    if (board != null) {
+                        replay(a, match);
+                        replay(b, match);
+                    }
+                    // whatever arrived after the JOINs
+                    drain(a);
+                    drain(b);
+                } catch (IOException e) {
+                    close(b);
+                }
+            });
+            selector.wakeup();
+        }
+
+        /**
+         * Hands a spectator over to this loop, which sends it the board of
+         * the match and then its feed.
+         *
+         * @param gameId the id of the match to watch
+         * @param seat   the spectator
+         */
+        void watch(int gameId, Seat seat) {
+            tasks.add(() -> {
+                Match match = matches.get(gameId);
+                try {
+                    if (match == null) {
+                        throw new IOException("match " + gameId + " is over");
+                    }
+                    seat.spectator = true;
+                    seat.match = match;
+                    if (match.feed == null) {
+                        match.feed = ByteBuffer.allocateDirect(FEED);
+                    }
+                    seat.view = match.feed.duplicate();
+                    seat.sent = match.fed;
+                    // room for the largest board, behind whatever the lobby left
+                    ByteBuffer out = ByteBuffer.allocateDirect(SNAPSHOT + OUTSIZE);
+                    out.put(seat.out.flip());
+                    seat.out = out;
+                    match.spectators.add(seat);
+                    register(seat);
+                    snapshot(seat, match);
+                    flush(seat);
+                } catch (IOException e) {
+                    close(seat);
+                }
+            });
+            selector.wakeup();
+        }
+
+        /**
+         * Sends a player coming back to a recovered match its board, and then
+         * a JOIN whose cell tells whose turn it is, since the replay marks
+         * both sides' moves: "O" moves first, so it is "O"'s turn whenever
+         * both have marked as many cells.
+         */
+        private void replay(Seat seat, Match match) throws IOException {
+            // room for the largest board, behind whatever is pending
+            ByteBuffer out = ByteBuffer.allocateDirect(SNAPSHOT + OUTSIZE);
+            out.put(seat.out.flip());
+            seat.out = out;
+            int marked = 0; // #O's minus #X's
+            for (int cell = 0; cell < match.board.cells(); cell++) {
+                int player = match.board.get(cell);
+                marked += (player == GameEngine.O) ? 1 : (player == GameEngine.X) ? -1 : 0;
+            }
+            if (!snapshot(seat, match) || !MessageCodec.encode(msg.set(Message.JOIN,
+                    seat.mark, (marked == 0) ? 'O' : 'X'), true, seat.out)) {
+                throw new IOException("output overflow");
+            }
+            flush(seat);
+        }
+
+        /**
+         * Encodes the board of a match into a player's or spectator's output
+         * buffer: a CONFIG unless it is 3x3, a NEW_GAME that clears whatever
+         * board the receiver shows, (e.g., a spectator skipping ahead), and a
+         * MOVE for every marked cell.
+         *
+         * @return false if the output buffer is too small
+         */
+        private boolean snapshot(Seat seat, Match match) {
+            Board board = match.board;
+            msg.gameId = match.gameId;
+            if (!(board instanceof GameEngine)
+                    && !MessageCodec.encode(msg.config(board), seat.binary, seat.out)) {
+                return false;
+            }
+            if (!MessageCodec.encode(msg.set(Message.NEW_GAME, (byte) 0, 0),
+                    seat.binary, seat.out)) {
+                return false;
+            }
+            for (int cell = 0; cell < board.cells(); cell++) {
+                int player = board.get(cell);
+                if (player != GameEngine.NONE && !MessageCodec.encode(msg.set(Message.MOVE,
+                        (byte) ((player == GameEngine.O) ? 'O' : 'X'), cell),
+                        seat.binary, seat.out)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Encodes a message once into the feed of its match and writes it
+         * to every spectator.
+         */
+        private void broadcast(Match match, Message msg) {
+            if (match.spectators.isEmpty()) {
+                return;
+            }
+            int at = (int) (match.fed % FEED);
+            match.feed.limit(at + MessageCodec.FRAME_SIZE).position(at);
+            MessageCodec.encodeBinary(msg, match.feed);
+            match.fed += MessageCodec.FRAME_SIZE;
+            // backwards, since a spectator who is dropped leaves the list
+            for (int i = match.spectators.size() - 1; i >= 0; i--) {
+                Seat spectator = match.spectators.get(i);
+                try {
+                    flush(spectator);
+                } catch (IOException e) {
+                    close(spectator);
+                }
+            }
+        }
+
+        /**
+         * Writes as much of its match's feed to a spectator as the socket
+         * accepts, straight from the shared ring. A spectator whose unsent
+         * frames were overwritten skips to a fresh board if it stopped at a
+         * frame boundary, and is dropped otherwise.
+         *
+         * @return true if something is left over
+         */
+        private boolean feed(Seat seat) throws IOException {
+            Match match = seat.match;
+            if (match.fed - seat.sent > FEED) {
+                if (seat.sent % MessageCodec.FRAME_SIZE != 0) {
+                    throw new IOException("spectator too slow");
+                }
+                seat.sent = match.fed;
+                snapshot(seat, match);
+                seat.out.flip();
+                seat.channel.write(seat.out);
+                boolean pending = seat.out.hasRemaining();
+                seat.out.compact();
+                if (pending) {
+                    return true;
+                }
+            }
+            while (seat.sent < match.fed) {
+                int from = (int) (seat.sent % FEED);
+                int length = (int) Math.min(match.fed - seat.sent, FEED - from);
+                seat.view.limit(from + length).position(from);
+                int n = seat.channel.write(seat.view);
+                seat.sent += n;
+                if (n < length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void register(Seat seat) throws IOException {
+            seat.key = seat.channel.register(selector, SelectionKey.OP_READ, seat);
+        }
+
+        /**
+         * Is the body of the event loop.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Seat seat = (Seat) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            read(seat);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(seat);
+                        }
+                    } catch (IOException e) {
+                        close(seat);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Decodes every complete message the player sent and relays it to
+         * its counterpart. A partial message stays in the buffer until the
+         * rest of it arrives.
+         */
+        private void read(Seat seat) throws IOException {
+            int length = seat.channel.read(seat.in);
+            if (length < 0) {
+                close(seat);
+                return;
+            }
+            drain(seat);
+        }
+
+        /**
+         * Relays the complete messages in the player's buffer, and ends the
+         * match at the first illegal one.
+         */
+        private void drain(Seat seat) throws IOException {
+            seat.in.flip();
+            while (seat.channel.isOpen() && MessageCodec.decode(seat.in, msg)) {
+                Metrics.MESSAGES_IN.increment();
+                if (seat.spectator) {
+                    // a spectator has nothing to say, and answering it
+                    // could split a frame of its feed
+                    continue;
+                }
+                if (msg.type == Message.HELLO) {
+                    // answer the handshake and speak binary from now on
+                    seat.binary = true;
+                    msg.gameId = seat.match.gameId;
+                    msg.cell = MessageCodec.VERSION;
+                    send(seat, msg);
+                } else if (seat.peer != null && !apply(seat.match, msg)) {
+                    // as if the offender had pressed "Exit Game"
+                    send(seat, msg.set(Message.EXIT_GAME, (byte) 0, 0));
+                    close(seat);
+                } else if (seat.peer != null) {
+                    send(seat.peer, msg);
+                    if (msg.type != Message.EXIT_GAME) {
+                        // the end of the match is broadcast by close()
+                        broadcast(seat.match, msg);
+                    }
+                }
+            }
+            seat.in.compact();
+            if (!seat.in.hasRemaining()) {
+                throw new IOException("message too long");
+            }
+        }
+
+        /**
+         * Applies a message to the board of its match, and journals it if it
+         * changed the board.
+         *
+         * @return false if the message is an illegal move or board size
+         */
+        private boolean apply(Match match, Message msg) {
+            msg.gameId = match.gameId;
+            switch (msg.type) {
+                case Message.MOVE:
+                    if (!match.board.play(msg.cell, GameEngine.player(msg.mark))) {
+                        return false;
+                    }
+                    break;
+                case Message.NEW_GAME:
+                case Message.SWITCH_TURN:
+                    match.board.clear();
+                    break;
+                case Message.CONFIG:
+                    try {
+                        match.board = msg.newBoard();
+                    } catch (IllegalArgumentException e) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return true;
+            }
+            if (journal != null) {
+                journal.append(msg);
+            }
+            return true;
+        }
+
+        /**
+         * Encodes a message into the player's output buffer and writes it
+         * out. A player who doesn't keep up until the buffer overflows is
+         * disconnected.
+         */
+        private void send(Seat seat, Message msg) {
+            if (!seat.channel.isOpen()) {
+                return;
+            }
+            try {
+                if (!MessageCodec.encode(msg, seat.binary, seat.out)) {
+                    throw new IOException("output overflow");
+                }
+                Metrics.MESSAGES_OUT.increment();
+                flush(seat);
+            } catch (IOException e) {
+                close(seat);
+            }
+        }
+
+        /**
+         * Writes as much of the pending output as the socket accepts, and
+         * asks for OP_WRITE only while something is left over.
+         */
+        private void flush(Seat seat) throws IOException {
+            seat.out.flip();
+            seat.channel.write(seat.out);
+            boolean pending = seat.out.hasRemaining();
+            seat.out.compact();
+            if (!pending && seat.spectator) {
+                pending = feed(seat);
+            }
+            seat.key.interestOps(pending
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Closes a player's connection and tells its counterpart to quit,
+         * as if it had pressed "Exit Game".
+         */
+        private void close(Seat seat) {
+            try {
+                seat.channel.close();
+            } catch (IOException e) {
+            }
+            if (seat.spectator) {
+                seat.match.spectators.remove(seat);
+                return;
+            }
+            Seat peer = seat.peer;
+            seat.peer = null;
+            if (peer != null) {
+                // the first side to leave ends the match
+                Metrics.ACTIVE_GAMES.decrement();
+                matches.remove(seat.match.gameId);
+                playing.remove(seat.match.gameId);
+                msg.gameId = seat.match.gameId;
+                broadcast(seat.match, msg.set(Message.EXIT_GAME, (byte) 0, 0));
+                for (Seat spectator : seat.match.spectators) {
+                    try {
+                        spectator.channel.close();
+                    } catch (IOException e) {
+                    }
+                }
+                seat.match.spectators.clear();
+                if (journal != null) {
+                    msg.gameId = seat.match.gameId;
+                    journal.append(msg.set(Message.EXIT_GAME, (byte) 0, 0));
+                }
+            }
+            if (peer != null && peer.channel.isOpen()) {
+                peer.peer = null;
+                msg.gameId = peer.match.gameId;
+                send(peer, msg.set(Message.EXIT_GAME, (byte) 0, 0));
+                try {
+                    peer.channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
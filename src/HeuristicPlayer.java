@@ -0,0 +1,69 @@
+/**
+ * HeuristicPlayer is the original line-counting auto player. It takes the
+ * center first, then completes one of its own lines if it has two marks in
+ * one, and otherwise blocks the line where the opponent has the most marks.
+ * <p>
+ * It used to keep its counters in two HashMaps per game, updated after
+ * every move. Those counters are fully determined by the board, so they
+ * are now derived from the two player masks on each call, which leaves no
+ * per-game state at all and lets one instance serve every game.
+ *
+ * @author Soheli Sultana
+ */
+public class HeuristicPlayer implements AutoPlayer {
+    private static final int CENTER = 4;
+
+    /**
+     * Chooses a move on a 3x3 board.
+     *
+     * @param board  the current board, which must be a GameEngine and not over
+     * @param player O or X, (i.e., the side to move)
+     * @return the cell to mark
+     */
+    @Override
+    public int nextMove(Board board, int player) {
+        if (!(board instanceof GameEngine)) {
+            throw new IllegalArgumentException("HeuristicPlayer only plays 3x3");
+        }
+        GameEngine engine = (GameEngine) board;
+        // the center reduces the chance of winning for the opponent
+        if (engine.isFree(CENTER)) {
+            return CENTER;
+        }
+        int mine = engine.mask(player);
+        int yours = engine.mask(1 - player);
+        int threat = -1;     // the line with the most of the opponent's marks
+        int threatCount = -1;
+        int chance = -1;     // a line with two of my marks and no opponent's
+        for (int i = 0; i < GameEngine.LINES.length; i++) {
+            int line = GameEngine.LINES[i];
+            // a line loses its count once the other side marked it
+            int yourCount = ((line & mine) != 0) ? -1 : Integer.bitCount(line & yours);
+            int myCount = ((line & yours) != 0) ? -1 : Integer.bitCount(line & mine);
+            if (yourCount > threatCount) {
+                threatCount = yourCount;
+                threat = i;
+            }
+            if (myCount == 2) {
+                chance = i;
+            }
+        }
+        int line = 0;
+        if (chance >= 0) {
+            line = GameEngine.LINES[chance];
+        } else if (threat >= 0) {
+            line = GameEngine.LINES[threat];
+        }
+        int free = line & engine.freeMask();
+        if (free == 0) {
+            // no line to complete or block is left, so take any free cell
+            free = engine.freeMask();
+        }
+        return Integer.numberOfTrailingZeros(free);
+    }
+
+    @Override
+    public boolean deterministic() {
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram records non-negative values, (e.g., nanoseconds), into
+ * HDR-style log-linear buckets: every power of two is split into 32 equal
+ * sub-buckets, so any recorded value is reported within about 3% while the
+ * whole range of a long fits in under 2,000 buckets. Recording is lock-free
+ * and never allocates, so many threads may record into one histogram.
+ *
+ * @author Soheli Sultana
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;                 // 32 sub-buckets
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @return the bucket a value falls into
+     */
+    private static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    /**
+     * @return the largest value that falls into a bucket
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long mantissa = bucket % SUB_COUNT + SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucket(value));
+        total.increment();
+        sum.add(value);
+    }
+
+    /**
+     * @return #recorded values
+     */
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values, 0 if none
+     */
+    public double mean() {
+        long n = total.sum();
+        return (n == 0) ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Estimates a percentile from the buckets.
+     *
+     * @param percentile 0 through to 100, (e.g., 99.9)
+     * @return the upper bound of the bucket holding the percentile, 0 if
+     * nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highest(i);
+            }
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    /**
+     * @return the upper bound of the highest non-empty bucket, 0 if none
+     */
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highest(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets all recorded values. Values recorded concurrently may or may
+     * not survive.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+    }
+}
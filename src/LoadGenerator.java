@@ -0,0 +1,342 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * LoadGenerator is a headless bot swarm. It opens simulated players against
+ * a GameServer, where bots are paired with each other in arrival order or,
+ * given "lobby", through the server's lobby, or against an
+ * AutoPlayerService, where every bot plays the auto player. Bots play with
+ * the ordinary move and "NewGame" messages, either randomly or from a fixed
+ * script, and start a new game whenever one is over.
+ * <p>
+ * The number of bots ramps up in steps. After every step it prints the
+ * moves per second and the 50th, 99th and 99.9th percentile of the move
+ * round trip, (i.e., from sending a move until the counterpart's move
+ * arrives). Given -Dttt.transport=unix, bots connect to the server's Unix
+ * domain socket instead of its TCP port, so both must run on one host.
+ * Given -Dttt.mux=GAMES, each bot plays that many games at once over its
+ * connection to an AutoPlayerService, pipelining the moves of all its games
+ * and flushing once per burst of replies.
+ *
+ * @author Soheli Sultana
+ */
+public class LoadGenerator {
+    // cells a scripted bot tries in this order
+    private static final int[] SCRIPT = {4, 0, 8, 2, 6, 1, 7, 3, 5};
+    private static final int MUX = Integer.getInteger("ttt.mux", 1); // games per auto bot
+
+    private final String host;
+    private final int port;
+    private final boolean paired;   // T: GameServer, F: AutoPlayerService
+    private final boolean joined;   // T: bots join a GameServer's lobby
+    private final boolean scripted; // T: play SCRIPT, F: play randomly
+    private final List<Bot> bots = new ArrayList<>();
+    private volatile LatencyHistogram rtt = new LatencyHistogram();
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java [-Dttt.mux=GAMES] LoadGenerator ipAddr ipPort server|lobby|auto "
+                + "[maxBots] [botsPerStep] [secondsPerStep] [random|scripted]");
+        System.exit(-1);
+    }
+
+    /**
+     * Starts a bot swarm.
+     *
+     * @param args args[0]: the server's ip address, args[1]: its port,
+     *             args[2]: "server" for a GameServer, "lobby" for one started
+     *             with "lobby" or "auto" for an AutoPlayerService, (args[3]: #bots at the end, default 64,
+     *             args[4]: #bots added per step, default 8, args[5]: seconds
+     *             per step, default 5, args[6]: "random" or "scripted")
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 7) {
+            usage();
+        }
+        int maxBots = 64;
+        int step = 8;
+        int seconds = 5;
+        int port = 0;
+        try {
+            port = Integer.parseInt(args[1]);
+            if (args.length > 3) {
+                maxBots = Integer.parseInt(args[3]);
+            }
+            if (args.length > 4) {
+                step = Integer.parseInt(args[4]);
+            }
+            if (args.length > 5) {
+                seconds = Integer.parseInt(args[5]);
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (!args[2].equals("server") && !args[2].equals("lobby") && !args[2].equals("auto")) {
+            usage();
+        }
+        boolean scripted = args.length > 6 && args[6].equals("scripted");
+        Metrics.start();
+        LoadGenerator load = new LoadGenerator(args[0], port, !args[2].equals("auto"),
+                args[2].equals("lobby"), scripted);
+        try {
+            load.ramp(maxBots, step, seconds);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @param host     the server's ip address
+     * @param port     the server's port
+     * @param paired   true for a GameServer, false for an AutoPlayerService
+     * @param joined   true to join a GameServer's lobby
+     * @param scripted true to play SCRIPT, false to play randomly
+     */
+    public LoadGenerator(String host, int port, boolean paired, boolean joined,
+                         boolean scripted) {
+        this.host = host;
+        this.port = port;
+        this.paired = paired;
+        this.joined = joined;
+        this.scripted = scripted;
+    }
+
+    /**
+     * Adds bots step by step and reports each step.
+     *
+     * @param maxBots #bots at the end
+     * @param step    #bots added per step, rounded up to an even number
+     *                against a GameServer
+     * @param seconds seconds per step
+     */
+    public void ramp(int maxBots, int step, int seconds) throws IOException, InterruptedException {
+        if (paired && step % 2 != 0) {
+            step++;
+        }
+        System.out.println("  bots   moves/s   p50(us)   p99(us)  p999(us)");
+        while (bots.size() < maxBots) {
+            for (int i = 0; i < step && bots.size() < maxBots; i++) {
+                Bot bot = new Bot(bots.size());
+                bots.add(bot);
+                bot.start();
+            }
+            rtt = new LatencyHistogram();
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            LatencyHistogram h = rtt;
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%6d %9.0f %9.1f %9.1f %9.1f%n", bots.size(), h.count() / elapsed,
+                    h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3);
+        }
+        for (Bot bot : bots) {
+            bot.quit();
+        }
+    }
+
+    /**
+     * Is a simulated player.
+     */
+    private class Bot extends Thread {
+        private final Transport transport;
+        private final MessageStream link;
+        private final Board board = new GameEngine();
+        private final Random rand;
+        private int myPlayer = GameEngine.X; // the auto player or a paired "O" makes me O
+        private long sentAt = 0;            // when my pending move was sent, 0 if none
+        private volatile boolean quitting = false;
+
+        Bot(int id) throws IOException {
+            super("Bot-" + id);
+            setDaemon(true);
+            rand = new Random(id);
+            if ("unix".equals(System.getProperty("ttt.transport"))) {
+                transport = ChannelTransport.connect(port);
+            } else {
+                Socket socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                transport = Transport.of(socket);
+            }
+            // JOIN and gameIds are binary only
+            link = new MessageStream(transport.input(), transport.output(),
+                    joined || (!paired && MUX > 1) || MessageStream.binaryRequested());
+            if (joined) {
+                link.write(new Message().join(0));
+            }
+        }
+
+        void quit() {
+            quitting = true;
+            try {
+                transport.close();
+            } catch (IOException e) {
+            }
+        }
+
+        /**
+         * Is the body of a bot.
+         */
+        @Override
+        public void run() {
+            Message msg = new Message();
+            try {
+                if (!paired && MUX > 1) {
+                    multiplex();
+                    return;
+                }
+                if (!paired) {
+                    // the auto player always plays second
+                    myPlayer = GameEngine.O;
+                    move();
+                }
+                while (true) {
+                    link.read(msg);
+                    switch (msg.type) {
+                        case Message.SWITCH_TURN:
+                            // GameServer makes the former of a pair "O"
+                            myPlayer = 1 - myPlayer;
+                            board.clear();
+                            sentAt = 0;
+                            if (myPlayer == GameEngine.O) {
+                                move();
+                            }
+                            break;
+                        case Message.JOIN:
+                            // the lobby has matched me
+                            myPlayer = GameEngine.player(msg.mark);
+                            board.clear();
+                            if (myPlayer == GameEngine.O) {
+                                move();
+                            }
+                            break;
+                        case Message.NEW_GAME:
+                            board.clear();
+                            sentAt = 0;
+                            break;
+                        case Message.EXIT_GAME:
+                            return;
+                        case Message.MOVE:
+                            if (sentAt != 0) {
+                                long elapsed = System.nanoTime() - sentAt;
+                                rtt.record(elapsed);
+                                Metrics.MOVE_RTT.record(elapsed);
+                                sentAt = 0;
+                            }
+                            board.play(msg.cell, 1 - myPlayer);
+                            move();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } catch (EOFException e) {
+                // the server or the counterpart has gone
+            } catch (IOException e) {
+                if (!quitting) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Plays my move, after starting a new game if the last one is over.
+         * Only "O" starts new games, so a pair never starts two at once.
+         */
+        private void move() throws IOException {
+            if (board.isOver()) {
+                if (myPlayer != GameEngine.O) {
+                    return;
+                }
+                link.write(Message.NEW_GAME, (byte) 0, 0);
+                board.clear();
+            }
+            int cell = pick(board);
+            board.play(cell, myPlayer);
+            sentAt = board.isOver() ? 0 : System.nanoTime();
+            link.write(Message.MOVE, (byte) (myPlayer == GameEngine.O ? 'O' : 'X'), cell);
+            if (board.isOver() && myPlayer == GameEngine.O) {
+                // nobody answers a final move
+                move();
+            }
+        }
+
+        /**
+         * Plays MUX games against the auto player at once, gameIds 1
+         * through to MUX. Every reply that arrived in one burst is answered
+         * before the answers are flushed together.
+         */
+        private void multiplex() throws IOException {
+            Board[] boards = new Board[MUX];
+            long[] sent = new long[MUX]; // like sentAt, per game
+            Message out = new Message();
+            for (int g = 0; g < MUX; g++) {
+                boards[g] = new GameEngine();
+                move(boards, sent, g, out);
+            }
+            link.flush();
+            Message msg = new Message();
+            while (true) {
+                link.read(msg);
+                do {
+                    if (msg.type == Message.EXIT_GAME) {
+                        return;
+                    }
+                    int g = msg.gameId - 1;
+                    if (msg.type != Message.MOVE || g < 0 || g >= MUX) {
+                        continue;
+                    }
+                    if (sent[g] != 0) {
+                        long elapsed = System.nanoTime() - sent[g];
+                        rtt.record(elapsed);
+                        Metrics.MOVE_RTT.record(elapsed);
+                        sent[g] = 0;
+                    }
+                    boards[g].play(msg.cell, GameEngine.X);
+                    move(boards, sent, g, out);
+                } while (link.poll(msg));
+                link.flush();
+            }
+        }
+
+        /**
+         * Buffers my move in game g, after starting a new game if it is over.
+         */
+        private void move(Board[] boards, long[] sent, int g, Message out) throws IOException {
+            Board game = boards[g];
+            out.gameId = g + 1;
+            if (game.isOver()) {
+                link.append(out.set(Message.NEW_GAME, (byte) 0, 0));
+                game.clear();
+            }
+            int cell = pick(game);
+            game.play(cell, GameEngine.O);
+            sent[g] = game.isOver() ? 0 : System.nanoTime();
+            link.append(out.set(Message.MOVE, (byte) 'O', cell));
+            if (game.isOver()) {
+                // nobody answers a final move
+                move(boards, sent, g, out);
+            }
+        }
+
+        private int pick(Board board) {
+            if (scripted) {
+                for (int cell : SCRIPT) {
+                    if (board.isFree(cell)) {
+                        return cell;
+                    }
+                }
+            }
+            int cell;
+            do {
+                cell = rand.nextInt(board.cells());
+            } while (!board.isFree(cell));
+            return cell;
+        }
+    }
+}
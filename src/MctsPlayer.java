@@ -0,0 +1,314 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MctsPlayer plays on boards of any size by Monte Carlo tree search: it
+ * walks down a tree of moves by UCT, expands a leaf the second time it is
+ * reached, finishes the game with random moves and adds the outcome to every
+ * node on the way, until its time budget of -Dttt.mcts.millis is spent (or,
+ * given -Dttt.mcts.playouts, that many playouts are done).
+ * <p>
+ * Every thread of -Dttt.mcts.threads, (i.e., the caller plus a pool shared
+ * by all games in this process), searches the same tree at once. Nothing is
+ * locked: visits and values are counters bumped by atomic adds, a node's
+ * children are published by a single compare-and-set, and a thread counts
+ * its visit before its playout is over, (i.e., a virtual loss), so the other
+ * threads spread over other moves meanwhile.
+ *
+ * @author Soheli Sultana
+ */
+public class MctsPlayer implements AutoPlayer {
+    private static final long MILLIS = Long.getLong("ttt.mcts.millis", 100);
+    private static final long PLAYOUTS = Long.getLong("ttt.mcts.playouts", 0); // 0: no limit
+    private static final int THREADS = Integer.getInteger("ttt.mcts.threads",
+            Runtime.getRuntime().availableProcessors());
+    private static final double EXPLORATION = Math.sqrt(2);
+    private static final ExecutorService POOL = (THREADS > 1)
+            ? Executors.newFixedThreadPool(THREADS - 1, task -> {
+                Thread thread = new Thread(task, "MctsPlayer");
+                thread.setDaemon(true);
+                return thread;
+            })
+            : null;
+
+    private static final VarHandle VISITS;
+    private static final VarHandle VALUE;
+    private static final VarHandle CHILDREN;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            VISITS = lookup.findVarHandle(Node.class, "visits", int.class);
+            VALUE = lookup.findVarHandle(Node.class, "value", long.class);
+            CHILDREN = lookup.findVarHandle(Node.class, "children", Node[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile long playouts = 0; // by the last search
+
+    /**
+     * Is a move in the search tree.
+     */
+    private static class Node {
+        final int cell;          // the move leading here, -1 at the root
+        int visits = 0;          // through VISITS only
+        long value = 0;          // 2 per win and 1 per draw of the side that moved here
+        Node[] children = null;  // through CHILDREN only
+
+        Node(int cell) {
+            this.cell = cell;
+        }
+    }
+
+    /**
+     * Searches the empty board of -Dttt.board once and prints the move and
+     * the playout rate.
+     *
+     * @param args (args[0]: the time budget in milliseconds)
+     */
+    public static void main(String[] args) {
+        long millis = MILLIS;
+        try {
+            if (args.length > 0) {
+                millis = Long.parseLong(args[0]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: java [-Dttt.board=ROWSxCOLSxK] MctsPlayer [millis]");
+            System.exit(-1);
+        }
+        Board board = Board.parse(System.getProperty("ttt.board"));
+        MctsPlayer player = new MctsPlayer();
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int move = player.search(board, GameEngine.O, millis, PLAYOUTS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("move %d after %d playouts on %d threads (%.0f playouts/s)%n",
+                    move, player.playouts(), THREADS, player.playouts() / seconds);
+        }
+    }
+
+    @Override
+    public int nextMove(Board board, int player) {
+        return search(board, player, MILLIS, PLAYOUTS);
+    }
+
+    /**
+     * @return #playouts of the last search
+     */
+    public long playouts() {
+        return playouts;
+    }
+
+    /**
+     * Searches a position on every thread.
+     *
+     * @param board  the current board, which must not be over
+     * @param player O or X, (i.e., the side to move)
+     * @param millis the time budget
+     * @param limit  #playouts to stop at, 0 for as many as the time allows
+     * @return the most visited move
+     */
+    int search(Board board, int player, long millis, long limit) {
+        Node root = new Node(-1);
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        AtomicLong done = new AtomicLong();
+        Callable<Void> search = () -> {
+            new Search(board, player, root, deadline, limit, done).run();
+            return null;
+        };
+        List<Future<Void>> helpers = new ArrayList<>();
+        for (int i = 1; i < THREADS; i++) {
+            helpers.add(POOL.submit(search));
+        }
+        try {
+            search.call();
+            for (Future<Void> helper : helpers) {
+                helper.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Throwable cause = (e instanceof ExecutionException) ? e.getCause() : e;
+            throw new IllegalStateException("search failed", cause);
+        }
+        playouts = done.get();
+        int best = -1;
+        int mostVisits = -1;
+        Node[] children = (Node[]) CHILDREN.getVolatile(root);
+        for (Node child : (children == null) ? new Node[0] : children) {
+            int visits = (int) VISITS.getVolatile(child);
+            if (visits > mostVisits) {
+                mostVisits = visits;
+                best = child.cell;
+            }
+        }
+        if (best < 0) {
+            // no playout finished in time, so any free cell will do
+            best = 0;
+            while (!board.isFree(best)) {
+                best++;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Is one thread's share of a search, playing on a board of its own.
+     */
+    private static class Search {
+        private final Board board;
+        private final int[] rootMarks;  // the root's cells + 1, negated for X
+        private final int rootPlayer;
+        private final Node root;
+        private final long deadline;
+        private final long limit;
+        private final AtomicLong done;
+        private final int[] free;       // free[0..nFree): the free cells
+        private final int[] where;      // where[cell]: its index in free
+        private final Node[] path;
+        private int nFree;
+
+        Search(Board position, int player, Node root, long deadline, long limit,
+               AtomicLong done) {
+            board = Board.create(position.rows(), position.cols(), position.k());
+            List<Integer> marks = new ArrayList<>();
+            for (int cell = 0; cell < position.cells(); cell++) {
+                int mark = position.get(cell);
+                if (mark != GameEngine.NONE) {
+                    marks.add((mark == GameEngine.O) ? cell + 1 : -(cell + 1));
+                }
+            }
+            rootMarks = marks.stream().mapToInt(Integer::intValue).toArray();
+            rootPlayer = player;
+            this.root = root;
+            this.deadline = deadline;
+            this.limit = limit;
+            this.done = done;
+            free = new int[board.cells()];
+            where = new int[board.cells()];
+            path = new Node[board.cells() + 1];
+        }
+
+        void run() {
+            // the threads may overshoot limit by one playout each
+            while (System.nanoTime() < deadline && (limit == 0 || done.get() < limit)) {
+                iterate();
+                done.getAndIncrement();
+            }
+        }
+
+        /**
+         * Selects, expands, plays out and backs up once.
+         */
+        private void iterate() {
+            reset();
+            Node node = root;
+            int depth = 0;
+            int player = rootPlayer;
+            path[0] = root;
+            VISITS.getAndAdd(root, 1);
+            while (!board.isOver()) {
+                Node[] children = (Node[]) CHILDREN.getVolatile(node);
+                if (children == null) {
+                    if (node != root && (int) VISITS.getOpaque(node) <= 1) {
+                        break; // a leaf is played out once before it grows
+                    }
+                    children = expand(node);
+                }
+                node = select(children, (int) VISITS.getOpaque(node));
+                VISITS.getAndAdd(node, 1);
+                play(node.cell, player);
+                path[++depth] = node;
+                player = 1 - player;
+            }
+            // finish the game at random
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            while (!board.isOver()) {
+                play(free[rand.nextInt(nFree)], player);
+                player = 1 - player;
+            }
+            int winner = board.winner();
+            int mover = rootPlayer; // the side that moved into path[1]
+            for (int i = 1; i <= depth; i++, mover = 1 - mover) {
+                VALUE.getAndAdd(path[i], (winner == mover) ? 2L
+                        : (winner == GameEngine.NONE) ? 1L : 0L);
+            }
+        }
+
+        /**
+         * Sets the board back to the root's position.
+         */
+        private void reset() {
+            board.clear();
+            for (int mark : rootMarks) {
+                board.play(Math.abs(mark) - 1, (mark > 0) ? GameEngine.O : GameEngine.X);
+            }
+            nFree = 0;
+            for (int cell = 0; cell < board.cells(); cell++) {
+                if (board.isFree(cell)) {
+                    where[cell] = nFree;
+                    free[nFree++] = cell;
+                }
+            }
+        }
+
+        /**
+         * Marks a cell and takes it off the free cells.
+         */
+        private void play(int cell, int player) {
+            board.play(cell, player);
+            int last = free[--nFree];
+            free[where[cell]] = last;
+            where[last] = where[cell];
+        }
+
+        /**
+         * Gives a node a child per free cell, unless another thread already
+         * has.
+         *
+         * @return the node's children
+         */
+        private Node[] expand(Node node) {
+            Node[] children = new Node[nFree];
+            for (int i = 0; i < nFree; i++) {
+                children[i] = new Node(free[i]);
+            }
+            Node[] witness = (Node[]) CHILDREN.compareAndExchange(node, null, children);
+            return (witness == null) ? children : witness;
+        }
+
+        /**
+         * @return the child with the highest upper confidence bound, or
+         * the first one nobody has visited yet
+         */
+        private static Node select(Node[] children, int parentVisits) {
+            double logN = Math.log(Math.max(1, parentVisits));
+            Node best = children[0];
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (Node child : children) {
+                int visits = (int) VISITS.getOpaque(child);
+                if (visits == 0) {
+                    return child;
+                }
+                double score = (long) VALUE.getOpaque(child) / (2.0 * visits)
+                        + EXPLORATION * Math.sqrt(logN / visits);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    }
+}
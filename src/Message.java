@@ -0,0 +1,126 @@
+/**
+ * Message is a single game message, (i.e., a move, "NewGame", "SwitchTurn",
+ * "ExitGame" or the protocol handshake). It is a mutable holder: readers and
+ * writers keep one instance and refill it for every message, so that
+ * exchanging messages allocates nothing.
+ *
+ * @author Soheli Sultana
+ */
+public class Message {
+    public static final byte MOVE = 1;        // cell is marked with mark
+    public static final byte NEW_GAME = 2;    // "NewGame"
+    public static final byte SWITCH_TURN = 3; // "SwitchTurn"
+    public static final byte EXIT_GAME = 4;   // "ExitGame"
+    public static final byte HELLO = 5;       // binary protocol handshake
+    public static final byte CONFIG = 6;      // the board size, binary only
+    public static final byte JOIN = 7;        // joins a lobby, binary only
+    public static final byte WATCH = 8;       // watches a game, binary only
+    // a JOIN's rating travels in the 16-bit cell field of a binary frame
+    public static final int MAX_RATING = 0xffff;
+
+    public byte type = 0;  // one of the above
+    public byte mark = 0;  // 'O' or 'X' for a MOVE or a lobby's JOIN, k for a CONFIG
+    public int gameId = 0; // the game this message belongs to
+    public int cell = 0;   // the cell index for a MOVE, the version for a HELLO,
+                           // (rows << 8 | cols) for a CONFIG, the rating for a JOIN,
+                           // (i.e., up to MAX_RATING)
+    public int seq = 0;    // the sender's sequence number
+
+    /**
+     * Refills this message.
+     *
+     * @param type one of MOVE, NEW_GAME, SWITCH_TURN, EXIT_GAME, HELLO, CONFIG, JOIN
+     *             and WATCH
+     * @param mark 'O' or 'X' for a MOVE, otherwise 0
+     * @param cell the cell index for a MOVE, otherwise 0
+     * @return this message
+     */
+    public Message set(byte type, byte mark, int cell) {
+        this.type = type;
+        this.mark = mark;
+        this.cell = cell;
+        return this;
+    }
+
+    /**
+     * Refills this message as a CONFIG announcing a board size.
+     *
+     * @param board the board whose size to announce
+     * @return this message
+     */
+    public Message config(Board board) {
+        return set(CONFIG, (byte) board.k(), board.rows() << 8 | board.cols());
+    }
+
+    /**
+     * Refills this message as a JOIN asking a lobby for a match.
+     *
+     * @param rating the player's rating, 0 through to MAX_RATING
+     * @return this message
+     * @throws IllegalArgumentException if the rating doesn't fit a frame
+     */
+    public Message join(int rating) {
+        if (rating < 0 || rating > MAX_RATING) {
+            throw new IllegalArgumentException("rating " + rating + " not in 0.." + MAX_RATING);
+        }
+        return set(JOIN, (byte) 0, rating);
+    }
+
+    /**
+     * Checks if this CONFIG announces the size of a board.
+     *
+     * @param board the board to compare with
+     * @return true if rows, cols and k all match
+     */
+    public boolean configures(Board board) {
+        return cell == (board.rows() << 8 | board.cols()) && mark == board.k();
+    }
+
+    /**
+     * Creates the board announced by this CONFIG.
+     *
+     * @return a new board
+     */
+    public Board newBoard() {
+        return Board.create(cell >> 8, cell & 0xff, mark);
+    }
+
+    /**
+     * Copies all fields from another message.
+     *
+     * @param other the message to copy
+     * @return this message
+     */
+    public Message copy(Message other) {
+        type = other.type;
+        mark = other.mark;
+        gameId = other.gameId;
+        cell = other.cell;
+        seq = other.seq;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case MOVE:
+                return cell + " " + (char) mark;
+            case NEW_GAME:
+                return "NewGame";
+            case SWITCH_TURN:
+                return "SwitchTurn";
+            case EXIT_GAME:
+                return "ExitGame";
+            case HELLO:
+                return "Hello v" + cell;
+            case CONFIG:
+                return "Board " + (cell >> 8) + "x" + (cell & 0xff) + "x" + mark;
+            case JOIN:
+                return (mark == 0) ? "Join " + cell : "Joined as " + (char) mark;
+            case WATCH:
+                return "Watch " + gameId;
+            default:
+                return "Unknown(" + type + ")";
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MessageCodec converts Messages to and from bytes in either of the two wire
+ * formats, reading from and writing to caller-owned ByteBuffers without
+ * allocating anything.
+ * <p>
+ * The binary format is a length-prefixed frame:
+ * <pre>
+ *   length(2) type(1) mark(1) gameId(4) cell(2) seq(4)
+ * </pre>
+ * where length counts the bytes after itself, so that newer peers may append
+ * fields that older ones skip, up to a body of 255 bytes. A cell index takes
+ * two bytes, so moves on boards up to 19x19 fit. The legacy format is the
+ * original plain text, (i.e., "4 O", "NewGame", "SwitchTurn" and
+ * "ExitGame") with no delimiter. A binary frame always starts with a zero
+ * byte while a legacy message never does, so every message can be
+ * recognized by its first byte, which lets both formats share a connection
+ * during a rollout.
+ *
+ * @author Soheli Sultana
+ */
+public class MessageCodec {
+    public static final int VERSION = 1;     // binary protocol version
+    public static final int BODY_SIZE = 12;  // the body of a version-1 frame
+    public static final int FRAME_SIZE = 2 + BODY_SIZE;
+    // the longest body a peer may send, (i.e., one whose length's high byte
+    // is still the zero that tells a binary frame from a legacy message)
+    private static final int MAX_BODY = 255;
+
+    private static final byte[] NEW_GAME = "NewGame".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SWITCH_TURN = "SwitchTurn".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXIT_GAME = "ExitGame".getBytes(StandardCharsets.US_ASCII);
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Checks if the message starting at the given byte is a binary frame.
+     *
+     * @param first the first byte of a message
+     * @return true for a binary frame, false for a legacy message
+     */
+    public static boolean isBinary(byte first) {
+        return first == 0;
+    }
+
+    /**
+     * Decodes the next message in either format.
+     *
+     * @param in  a buffer in read mode; its position is advanced past the
+     *            message only if a whole message was available
+     * @param msg the message to fill
+     * @return true if a message was decoded, false if more bytes are needed
+     */
+    public static boolean decode(ByteBuffer in, Message msg) throws StreamCorruptedException {
+        if (!in.hasRemaining()) {
+            return false;
+        }
+        return isBinary(in.get(in.position())) ? decodeBinary(in, msg) : decodeLegacy(in, msg);
+    }
+
+    /**
+     * Encodes a message in the given format.
+     *
+     * @param msg    the message to encode
+     * @param binary true for the binary format, false for the legacy one
+     * @param out    a buffer in write mode
+     * @return false if out didn't have enough room, in which case nothing
+     * was written
+     */
+    public static boolean encode(Message msg, boolean binary, ByteBuffer out) {
+        return binary ? encodeBinary(msg, out) : encodeLegacy(msg, out);
+    }
+
+    /**
+     * Decodes the next binary frame.
+     */
+    public static boolean decodeBinary(ByteBuffer in, Message msg) throws StreamCorruptedException {
+        int start = in.position();
+        if (in.remaining() < 2) {
+            return false;
+        }
+        int length = in.getShort(start) & 0xffff;
+        if (length < BODY_SIZE || length > MAX_BODY) {
+            throw new StreamCorruptedException("bad frame length " + length);
+        }
+        if (in.remaining() < 2 + length) {
+            return false;
+        }
+        in.position(start + 2);
+        msg.type = in.get();
+        msg.mark = in.get();
+        msg.gameId = in.getInt();
+        msg.cell = in.getShort() & 0xffff;
+        msg.seq = in.getInt();
+        // skip whatever a newer version appended
+        in.position(start + 2 + length);
+        return true;
+    }
+
+    /**
+     * Encodes a binary frame.
+     */
+    public static boolean encodeBinary(Message msg, ByteBuffer out) {
+        if (out.remaining() < FRAME_SIZE) {
+            return false;
+        }
+        out.putShort((short) BODY_SIZE);
+        out.put(msg.type);
+        out.put(msg.mark);
+        out.putInt(msg.gameId);
+        out.putShort((short) msg.cell);
+        out.putInt(msg.seq);
+        return true;
+    }
+
+    /**
+     * Decodes the next legacy message. Unlike the original reader, which
+     * took whatever one read() returned as one message, this recognizes
+     * where each message ends, so back-to-back messages aren't merged.
+     */
+    public static boolean decodeLegacy(ByteBuffer in, Message msg) throws StreamCorruptedException {
+        int start = in.position();
+        int limit = in.limit();
+        byte first = in.get(start);
+        if (first >= '0' && first <= '9') {
+            // a move: digits, a space and a mark
+            int cell = 0;
+            int i = start;
+            while (i < limit && in.get(i) >= '0' && in.get(i) <= '9') {
+                cell = cell * 10 + (in.get(i) - '0');
+                i++;
+            }
+            if (i + 2 > limit) {
+                return false;
+            }
+            if (in.get(i) != ' ') {
+                throw new StreamCorruptedException("bad move at byte " + i);
+            }
+            msg.type = Message.MOVE;
+            msg.mark = in.get(i + 1);
+            msg.cell = cell;
+            in.position(i + 2);
+            return true;
+        }
+        byte[] keyword;
+        byte type;
+        switch (first) {
+            case 'N':
+                keyword = NEW_GAME;
+                type = Message.NEW_GAME;
+                break;
+            case 'S':
+                keyword = SWITCH_TURN;
+                type = Message.SWITCH_TURN;
+                break;
+            case 'E':
+                keyword = EXIT_GAME;
+                type = Message.EXIT_GAME;
+                break;
+            default:
+                throw new StreamCorruptedException("unknown message at byte " + start);
+        }
+        int n = Math.min(keyword.length, limit - start);
+        for (int i = 0; i < n; i++) {
+            if (in.get(start + i) != keyword[i]) {
+                throw new StreamCorruptedException("unknown message at byte " + start);
+            }
+        }
+        if (n < keyword.length) {
+            return false;
+        }
+        msg.set(type, (byte) 0, 0);
+        in.position(start + keyword.length);
+        return true;
+    }
+
+    /**
+     * Encodes a legacy message. HELLO, CONFIG, JOIN and WATCH have no legacy form
+     * and are skipped, since a legacy peer only knows the 3x3 board and
+     * direct pairing.
+     */
+    public static boolean encodeLegacy(Message msg, ByteBuffer out) {
+        byte[] keyword = null;
+        switch (msg.type) {
+            case Message.MOVE:
+                int digits = 1;
+                for (int c = msg.cell; c >= 10; c /= 10) {
+                    digits++;
+                }
+                if (out.remaining() < digits + 2) {
+                    return false;
+                }
+                int end = out.position() + digits;
+                for (int i = end - 1, c = msg.cell; i >= out.position(); i--, c /= 10) {
+                    out.put(i, (byte) ('0' + c % 10));
+                }
+                out.position(end);
+                out.put((byte) ' ');
+                out.put(msg.mark);
+                return true;
+            case Message.NEW_GAME:
+                keyword = NEW_GAME;
+                break;
+            case Message.SWITCH_TURN:
+                keyword = SWITCH_TURN;
+                break;
+            case Message.EXIT_GAME:
+                keyword = EXIT_GAME;
+                break;
+            default:
+                return true;
+        }
+        if (out.remaining() < keyword.length) {
+            return false;
+        }
+        out.put(keyword);
+        return true;
+    }
+}
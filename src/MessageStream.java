@@ -0,0 +1,187 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * MessageStream exchanges Messages over a pair of blocking streams, (i.e.,
+ * a TCP socket or a JSCH channel), reusing one input and one output buffer
+ * for the lifetime of the connection.
+ * <p>
+ * Incoming messages are recognized one by one in either format. Outgoing
+ * messages use the legacy format until the binary one has been negotiated:
+ * a side that offers it sends a HELLO frame, and a side that receives a
+ * HELLO answers with its own and switches to binary. Only offer it to a
+ * counterpart that is known to understand HELLO, since the original reader
+ * can't parse it.
+ *
+ * @author Soheli Sultana
+ */
+public class MessageStream {
+    private static final int BUFSIZE = 1024;
+
+    private final InputStream input;
+    private final OutputStream output;
+    private final ByteBuffer in = ByteBuffer.allocate(BUFSIZE);
+    private final ByteBuffer out = ByteBuffer.allocate(BUFSIZE);
+    private final Message scratch = new Message(); // for write(type, mark, cell)
+    private volatile boolean binary = false; // T: write binary frames
+    private boolean helloSent = false;
+    private int seq = 0;              // my next sequence number
+
+    /**
+     * Wraps a pair of streams.
+     *
+     * @param input       the stream from my counterpart
+     * @param output      the stream to my counterpart
+     * @param offerBinary true to offer the binary format right away
+     */
+    public MessageStream(InputStream input, OutputStream output, boolean offerBinary)
+            throws IOException {
+        this.input = input;
+        this.output = output;
+        in.flip(); // nothing to read yet
+        if (offerBinary) {
+            sendHello();
+        }
+    }
+
+    /**
+     * Checks if the binary format is requested through -Dttt.protocol=binary.
+     *
+     * @return true if this process should offer the binary format
+     */
+    public static boolean binaryRequested() {
+        return "binary".equals(System.getProperty("ttt.protocol"));
+    }
+
+    /**
+     * @return true if messages are now written in the binary format
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Blocks until the next game message arrives. HELLO frames are handled
+     * here and never returned.
+     *
+     * @param msg the message to fill
+     * @throws EOFException if my counterpart closed the connection
+     */
+    public void read(Message msg) throws IOException {
+        while (true) {
+            while (!MessageCodec.decode(in, msg)) {
+                fill();
+            }
+            if (msg.type != Message.HELLO) {
+                Metrics.MESSAGES_IN.increment();
+                return;
+            }
+            sendHello();
+        }
+    }
+
+    /**
+     * Reads the next game message only if it is buffered already, (i.e.,
+     * arrived together with an earlier one), so that a caller can handle a
+     * burst of messages before it flushes its answers.
+     *
+     * @param msg the message to fill
+     * @return true if a message was read, false if reading would block
+     */
+    public boolean poll(Message msg) throws IOException {
+        while (MessageCodec.decode(in, msg)) {
+            if (msg.type != Message.HELLO) {
+                Metrics.MESSAGES_IN.increment();
+                return true;
+            }
+            sendHello();
+        }
+        return false;
+    }
+
+    /**
+     * Sends a message, stamping it with my next sequence number.
+     *
+     * @param msg the message to send
+     */
+    public synchronized void write(Message msg) throws IOException {
+        append(msg);
+        flush();
+    }
+
+    /**
+     * Buffers a message behind the ones not yet flushed, stamping it with my
+     * next sequence number. It leaves once the buffer fills up or flush()
+     * is called, so pipelined messages share a write.
+     *
+     * @param msg the message to send
+     */
+    public synchronized void append(Message msg) throws IOException {
+        msg.seq = seq++;
+        if (!MessageCodec.encode(msg, binary, out)) {
+            flush();
+            MessageCodec.encode(msg, binary, out);
+        }
+        Metrics.MESSAGES_OUT.increment();
+    }
+
+    /**
+     * Sends the buffered messages.
+     */
+    public synchronized void flush() throws IOException {
+        if (out.position() > 0) {
+            output.write(out.array(), 0, out.position());
+            output.flush();
+            out.clear();
+        }
+    }
+
+    /**
+     * Sends a message built from its fields.
+     *
+     * @param type one of Message.MOVE, NEW_GAME, SWITCH_TURN and EXIT_GAME
+     * @param mark 'O' or 'X' for a MOVE, otherwise 0
+     * @param cell the cell index for a MOVE, otherwise 0
+     */
+    public synchronized void write(byte type, byte mark, int cell) throws IOException {
+        scratch.gameId = 0;
+        write(scratch.set(type, mark, cell));
+    }
+
+    /**
+     * Closes both streams.
+     */
+    public void close() throws IOException {
+        output.close();
+        input.close();
+    }
+
+    private synchronized void sendHello() throws IOException {
+        if (helloSent) {
+            return;
+        }
+        binary = true;
+        helloSent = true;
+        scratch.gameId = 0;
+        write(scratch.set(Message.HELLO, (byte) 0, MessageCodec.VERSION));
+    }
+
+    /**
+     * Reads more bytes behind whatever is left over in the input buffer.
+     */
+    private void fill() throws IOException {
+        in.compact();
+        if (!in.hasRemaining()) {
+            throw new IOException("message too long");
+        }
+        int length = input.read(in.array(), in.position(), in.remaining());
+        if (length < 0) {
+            throw new EOFException();
+        }
+        in.position(in.position() + length);
+        in.flip();
+    }
+}
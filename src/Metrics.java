@@ -0,0 +1,207 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Metrics holds this process's counters and latency histograms. Recording
+ * is lock-free and allocation-free, (i.e., a LongAdder increment or a
+ * LatencyHistogram bucket increment), so it can stay on every move's path.
+ * <p>
+ * start() publishes them through JMX as OnlineTicTacToe:type=Metrics and,
+ * given -Dttt.metrics.port=PORT, in the Prometheus text format at
+ * http://localhost:PORT/metrics.
+ *
+ * @author Soheli Sultana
+ */
+public class Metrics implements MetricsMXBean {
+    public static final LongAdder MESSAGES_IN = new LongAdder();    // messages received
+    public static final LongAdder MESSAGES_OUT = new LongAdder();   // messages sent
+    public static final LongAdder ACTIVE_GAMES = new LongAdder();   // games in progress
+    public static final LongAdder CACHE_HITS = new LongAdder();     // moves a PositionCache held
+    public static final LongAdder CACHE_MISSES = new LongAdder();   // moves it had to ask for
+    public static final LongAdder CACHE_EVICTIONS = new LongAdder();
+    // from sending my move until my counterpart's move arrives, in ns
+    public static final LatencyHistogram MOVE_RTT = new LatencyHistogram();
+    // the time an AutoPlayer takes to choose a move, in ns
+    public static final LatencyHistogram AI_DECISION = new LatencyHistogram();
+    // the time taken to connect to a counterpart or a service, in ns
+    public static final LatencyHistogram CONNECT_SETUP = new LatencyHistogram();
+
+    private static boolean started = false;
+
+    /**
+     * Registers the MXBean and, if -Dttt.metrics.port is given, starts the
+     * HTTP endpoint. Only the first call has any effect.
+     */
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(),
+                    new ObjectName("OnlineTicTacToe:type=Metrics"));
+        } catch (Exception e) {
+            System.err.println("JMX metrics unavailable: " + e);
+        }
+        String port = System.getProperty("ttt.metrics.port");
+        if (port != null) {
+            try {
+                serve(Integer.parseInt(port));
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("HTTP metrics unavailable: " + e);
+            }
+        }
+    }
+
+    /**
+     * Serves /metrics on the loopback interface only.
+     */
+    private static void serve(int port) throws IOException {
+        HttpServer http = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        http.start();
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format
+     */
+    public static String scrape() {
+        StringBuilder text = new StringBuilder();
+        counter(text, "ttt_messages_in_total", MESSAGES_IN.sum());
+        counter(text, "ttt_messages_out_total", MESSAGES_OUT.sum());
+        text.append("# TYPE ttt_active_games gauge\n");
+        text.append("ttt_active_games ").append(ACTIVE_GAMES.sum()).append('\n');
+        counter(text, "ttt_cache_hits_total", CACHE_HITS.sum());
+        counter(text, "ttt_cache_misses_total", CACHE_MISSES.sum());
+        counter(text, "ttt_cache_evictions_total", CACHE_EVICTIONS.sum());
+        summary(text, "ttt_move_rtt_seconds", MOVE_RTT);
+        summary(text, "ttt_ai_decision_seconds", AI_DECISION);
+        summary(text, "ttt_connect_setup_seconds", CONNECT_SETUP);
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, long value) {
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, LatencyHistogram h) {
+        text.append("# TYPE ").append(name).append(" summary\n");
+        for (String q : new String[]{"0.5", "0.99", "0.999"}) {
+            text.append(name).append("{quantile=\"").append(q).append("\"} ")
+                    .append(h.percentile(Double.parseDouble(q) * 100) / 1e9).append('\n');
+        }
+        text.append(name).append("_sum ").append(h.sum() / 1e9).append('\n');
+        text.append(name).append("_count ").append(h.count()).append('\n');
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return MESSAGES_IN.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return MESSAGES_OUT.sum();
+    }
+
+    @Override
+    public long getActiveGames() {
+        return ACTIVE_GAMES.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return CACHE_EVICTIONS.sum();
+    }
+
+    @Override
+    public long getMoveRoundTrips() {
+        return MOVE_RTT.count();
+    }
+
+    @Override
+    public long getMoveRoundTripP50() {
+        return micros(MOVE_RTT.percentile(50));
+    }
+
+    @Override
+    public long getMoveRoundTripP99() {
+        return micros(MOVE_RTT.percentile(99));
+    }
+
+    @Override
+    public long getMoveRoundTripP999() {
+        return micros(MOVE_RTT.percentile(99.9));
+    }
+
+    @Override
+    public long getAiDecisions() {
+        return AI_DECISION.count();
+    }
+
+    @Override
+    public long getAiDecisionP50() {
+        return micros(AI_DECISION.percentile(50));
+    }
+
+    @Override
+    public long getAiDecisionP99() {
+        return micros(AI_DECISION.percentile(99));
+    }
+
+    @Override
+    public long getAiDecisionP999() {
+        return micros(AI_DECISION.percentile(99.9));
+    }
+
+    @Override
+    public long getConnectSetups() {
+        return CONNECT_SETUP.count();
+    }
+
+    @Override
+    public long getConnectSetupP50() {
+        return micros(CONNECT_SETUP.percentile(50));
+    }
+
+    @Override
+    public long getConnectSetupP99() {
+        return micros(CONNECT_SETUP.percentile(99));
+    }
+
+    @Override
+    public long getConnectSetupMax() {
+        return micros(CONNECT_SETUP.max());
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * MetricsMXBean is the JMX view of Metrics, registered as
+ * OnlineTicTacToe:type=Metrics. Latencies are in microseconds.
+ *
+ * @author Soheli Sultana
+ */
+public interface MetricsMXBean {
+    long getMessagesIn();
+
+    long getMessagesOut();
+
+    long getActiveGames();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+
+    long getMoveRoundTrips();
+
+    long getMoveRoundTripP50();
+
+    long getMoveRoundTripP99();
+
+    long getMoveRoundTripP999();
+
+    long getAiDecisions();
+
+    long getAiDecisionP50();
+
+    long getAiDecisionP99();
+
+    long getAiDecisionP999();
+
+    long getConnectSetups();
+
+    long getConnectSetupP50();
+
+    long getConnectSetupP99();
+
+    long getConnectSetupMax();
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+
+/**
+ * MnkBoard is a Board of any size from 3x3 up to 19x19, such as Gomoku's
+ * 15,15,5. Since a new line can only pass through the cell just marked, a
+ * win is detected incrementally: play() walks the four lines through that
+ * cell, at most k - 1 cells each way, so the check costs O(k) however
+ * large the board is.
+ *
+ * @author Soheli Sultana
+ */
+public class MnkBoard implements Board {
+    public static final int MAX_SIZE = 19;
+    // the four line directions as (row, column) steps
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    private final int rows;
+    private final int cols;
+    private final int k;
+    private final byte[] cells;      // cells[i]: 0 if empty, otherwise player + 1
+    private int marked = 0;          // #marked cells
+    private int winner = GameEngine.NONE;
+
+    /**
+     * Creates an empty board.
+     *
+     * @param rows #rows (3 through to MAX_SIZE)
+     * @param cols #columns (3 through to MAX_SIZE)
+     * @param k    #marks in a line to win (3 through to max(rows, cols))
+     */
+    public MnkBoard(int rows, int cols, int k) {
+        if (rows < 3 || rows > MAX_SIZE || cols < 3 || cols > MAX_SIZE
+                || k < 3 || k > Math.max(rows, cols)) {
+            throw new IllegalArgumentException("bad board " + rows + "x" + cols + "x" + k);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.k = k;
+        cells = new byte[rows * cols];
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public int k() {
+        return k;
+    }
+
+    @Override
+    public int cells() {
+        return cells.length;
+    }
+
+    @Override
+    public boolean play(int cell, int player) {
+        if (cell < 0 || cell >= cells.length || cells[cell] != 0) {
+            return false;
+        }
+        cells[cell] = (byte) (player + 1);
+        marked++;
+        if (winner == GameEngine.NONE && longestLine(cell) >= k) {
+            winner = player;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isFree(int cell) {
+        return cells[cell] == 0;
+    }
+
+    @Override
+    public int get(int cell) {
+        return cells[cell] - 1;
+    }
+
+    @Override
+    public boolean hasWon(int player) {
+        return winner == player;
+    }
+
+    @Override
+    public int winner() {
+        return winner;
+    }
+
+    @Override
+    public boolean isFull() {
+        return marked == cells.length;
+    }
+
+    @Override
+    public boolean isOver() {
+        return winner != GameEngine.NONE || isFull();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cells, (byte) 0);
+        marked = 0;
+        winner = GameEngine.NONE;
+    }
+
+    /**
+     * @return the longest run of equal marks through a marked cell
+     */
+    private int longestLine(int cell) {
+        int longest = 0;
+        for (int[] d : DIRECTIONS) {
+            int run = 1 + run(cell, d[0], d[1]) + run(cell, -d[0], -d[1]);
+            longest = Math.max(longest, run);
+        }
+        return longest;
+    }
+
+    /**
+     * Counts the marks equal to cell's that follow it in one direction,
+     * stopping after k - 1 of them.
+     */
+    private int run(int cell, int dr, int dc) {
+        byte mark = cells[cell];
+        int r = cell / cols + dr;
+        int c = cell % cols + dc;
+        int n = 0;
+        while (n < k - 1 && r >= 0 && r < rows && c >= 0 && c < cols
+                && cells[r * cols + c] == mark) {
+            n++;
+            r += dr;
+            c += dc;
+        }
+        return n;
+    }
+}
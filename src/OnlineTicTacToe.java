@@ -10,8 +10,6 @@ import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
 import java.io.Console;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -19,6 +17,9 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.*;
 import java.io.*;
 
@@ -28,28 +29,53 @@ import java.io.*;
  */
 public class OnlineTicTacToe implements ActionListener {
     private final int INTERVAL = 1000; // 1 second
-    private final int NBUTTONS = 12; // #bottons
+    private Board engine = Board.parse(System.getProperty("ttt.board")); // the board and the rules
+    private final int NBUTTONS = engine.cells() + 3; // #buttons: cells, New Game, Switch Turn, Exit Game
     private InputStream input = null; // input from my counterpart
-    private DataOutputStream output = null; // output from my counterpart
+    private OutputStream output = null; // output to my counterpart
+    private MessageStream link = null; // messages to/from my counterpart
     private JFrame window = null; // the tic-tac-toe window
-    private JButton[] button = new JButton[NBUTTONS]; // button[0] - button[9]
-    private boolean[] myTurn = new boolean[1]; // T: my turn, F: your turn
+    private JButton[] button = new JButton[NBUTTONS]; // button[0] - button[NBUTTONS - 1]
+    // my mark and whether it is my turn, replaced as a whole
+    private final AtomicReference<Turn> turn = new AtomicReference<>();
+    // my counterpart's messages on their way to the EDT, oldest first
+    private final ConcurrentLinkedQueue<Message> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean renderPending = new AtomicBoolean(false);
+    private volatile long moveSentAt = 0; // when my last move was sent, 0 if answered
     private String myMark = null; // "O" or "X"
     private String yourMark = null; // "X" or "O"
-    List<Integer> listd1 = Arrays.asList(new Integer[]{0, 4, 8});
-    List<Integer> listd2 = Arrays.asList(new Integer[]{2, 4, 6});
-    private static Set<Integer> diag1 = new HashSet();
-    private static Set<Integer> diag2 = new HashSet();
-    private Map<String, Integer> stateMap = new HashMap<>();
-    private static String[] keys = new String[]{"r0", "r1", "r2", "c0", "c1", "c2", "d1", "d2"};
-    private Set<Integer> selectedButton = new HashSet<>();
-    private Map<String, Integer> stateMapAuto = new HashMap<>();
+    private AutoPlayer ai = null; // the auto player's strategy
+
+    /**
+     * Is the turn of a windowed player: my mark, ("O" or "X"), and whether
+     * it is my turn. Both change together, so they are one immutable value.
+     */
+    private static final class Turn {
+        private static final Turn[] TURNS = {
+                new Turn("O", true), new Turn("O", false),
+                new Turn("X", true), new Turn("X", false)
+        };
+
+        final String mark;
+        final boolean mine;
+
+        private Turn(String mark, boolean mine) {
+            this.mark = mark;
+            this.mine = mine;
+        }
+
+        static Turn of(String mark, boolean mine) {
+            return TURNS[(mark.equals("O") ? 0 : 2) + (mine ? 0 : 1)];
+        }
+    }
 
     /**
      * Prints out the usage.
      */
     private static void usage() {
-        System.err.println("Usage: java OnlineTicTacToe ipAddr ipPort(>=5000) [auto]");
+        System.err.println("Usage: java [-Dttt.board=ROWSxCOLSxK] [-Dttt.rating=RATING] "
+                + "[-Dttt.resume=GAMEID:MARK] "
+                + "OnlineTicTacToe ipAddr ipPort(>=5000) [auto|service|lobby] | local");
         System.exit(-1);
     }
 
@@ -66,10 +92,15 @@ public class OnlineTicTacToe implements ActionListener {
     /**
      * Starts the online tic-tac-toe game.
      *
-     * @param args[0]: my counterpart's ip address, args[1]: his/her port, (arg[2]: "auto")
+     * @param args[0]: my counterpart's ip address, args[1]: his/her port, (arg[2]: "auto",
+     *                 "service" to play against an AutoPlayerService there or "lobby"
+     *                 to be matched by a GameServer lobby there, or to come back to
+     *                 a match it recovered given -Dttt.resume)
      *                 if args.length == 0, this Java program is remotely launched by JSCH.
+     *                 args[0]: "local" plays against an auto player in this process.
      */
     public static void main(String[] args) {
+        Metrics.start();
         if (args.length == 0) {
             // if no arguments, this process was launched through JSCH
             try {
@@ -77,6 +108,19 @@ public class OnlineTicTacToe implements ActionListener {
             } catch (IOException e) {
                 error(e);
             }
+        } else if (args.length == 1 && args[0].equals("local")) {
+            // play against an auto player on another thread of this process
+            PipeTransport[] pair = PipeTransport.pair();
+            Thread auto = new Thread(() -> {
+                try {
+                    new OnlineTicTacToe(pair[1]);
+                } catch (IOException e) {
+                    error(e);
+                }
+            }, "AutoPlayer");
+            auto.setDaemon(true);
+            auto.start();
+            OnlineTicTacToe game = new OnlineTicTacToe(pair[0], true);
         } else {
             // this process was launched from the user console.
             // verify the number of arguments
@@ -105,6 +149,32 @@ public class OnlineTicTacToe implements ActionListener {
             if (args.length == 3 && args[2].equals("auto")) {
                 // auto play
                 OnlineTicTacToe game = new OnlineTicTacToe(args[0]);
+            } else if (args.length == 3 && args[2].equals("service")) {
+                // auto play against a shared service
+                OnlineTicTacToe game = new OnlineTicTacToe(args[0], port);
+            } else if (args.length == 3 && args[2].equals("lobby")
+                    && System.getProperty("ttt.resume") != null) {
+                // come back to a match a restarted GameServer recovered
+                String[] resume = System.getProperty("ttt.resume").split(":");
+                int gameId = 0;
+                try {
+                    gameId = Integer.parseInt(resume[0]);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (gameId < 1 || resume.length != 2
+                        || !(resume[1].equals("O") || resume[1].equals("X"))) {
+                    usage();
+                }
+                OnlineTicTacToe game = new OnlineTicTacToe(args[0], port, gameId,
+                        resume[1].charAt(0));
+            } else if (args.length == 3 && args[2].equals("lobby")) {
+                // play whoever a GameServer lobby matches me with
+                int rating = Integer.getInteger("ttt.rating", 0);
+                if (rating < 0 || rating > Message.MAX_RATING) {
+                    usage();
+                }
+                OnlineTicTacToe game = new OnlineTicTacToe(args[0], port, rating);
             } else {
                 // interactive play
                 OnlineTicTacToe game = new OnlineTicTacToe(addr, port);
@@ -119,82 +189,241 @@ public class OnlineTicTacToe implements ActionListener {
      */
     public OnlineTicTacToe() throws IOException {
         // receive an ssh2 connection from a user-local master server.
-        Connection connection = new Connection();
-        input = connection.in;
-        output = connection.out;
+        this(new Connection());
+    }
+
+    /**
+     * Is the body of the auto player, played over any transport: a JSCH
+     * connection when remotely launched, or a pipe when the user plays
+     * "local". It always assumes that the user plays first.
+     *
+     * @param connection the transport to the user
+     */
+    public OnlineTicTacToe(Transport connection) throws IOException {
+        input = connection.input();
+        output = connection.output();
+        link = new MessageStream(input, output, false);
         // for debugging, always good to write debugging messages to the local file
         // don't use System.out that is a connection back to the client.
-        PrintWriter logs = new PrintWriter(new FileOutputStream("logs.txt"));
-        logs.println("Auto play: got started.");
-        logs.flush();
+        // the logger writes from its own thread, so moves never wait for the file.
+        GameLogger logs = new GameLogger("logs.txt");
+        logs.log("Auto play: got started.");
         myMark = "X"; // auto player is always the 2nd.
         yourMark = "O";
+        ai = AutoPlayer.forBoard(engine);
         // the main body of auto play.
-
-        diag1.addAll(listd1);
-        diag2.addAll(listd2);
-        // updating count for rows, columns and diagonals
-        for (String key : keys) {
-            stateMap.put(key, 0);
-            stateMapAuto.put(key, 0);
-        }
-
-        HashSet<Integer> set = new HashSet<>();
-        Random rand = new Random();
-
+        Message msg = new Message();
         while (true) {
-            // busy waiting, untill get input from local user
-            while (input.available() <= 0) {
-                int count = 0;
-                count++;
-                count = count % 10;
+            // read local user actions, blocking until they arrive
+            try {
+                link.read(msg);
+            } catch (EOFException e) {
+                logs.log("Lost the local user...");
+                logs.close();
+                connection.close();
+                return;
             }
 
-            byte[] bytes = new byte[1024];
-            // read local user actions
-            int length = input.read(bytes);
-            String str = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (msg.type == Message.NEW_GAME || msg.type == Message.SWITCH_TURN) {
+                // the auto player always plays second
+                engine.clear();
+                logs.log("starting a new game...");
+                continue;
+            }
 
-            if (str.equals("NewGame")) {
-                clearState();
-                logs.println("starting a new game...");
-                logs.flush();
+            if (msg.type == Message.CONFIG) {
+                // the local user plays on another board size
+                engine = msg.newBoard();
+                ai = AutoPlayer.forBoard(engine);
+                logs.log("playing on ", msg);
                 continue;
             }
 
-            if (str.equals("ExitGame")) {
-                logs.println("Quit the game...");
-                logs.flush();
+            if (msg.type == Message.EXIT_GAME) {
+                logs.log("Quit the game...");
+                logs.close();
                 connection.close();
-
+                return;
             }
-            logs.println("received message = " + str);
-            logs.flush();
-            String[] msg = str.split(" ");
-            int buttonId = Integer.parseInt(msg[0]);
+            logs.log("received message = ", msg);
+            int buttonId = msg.cell;
 
-            selectedButton.add(buttonId);
+            engine.play(buttonId, GameEngine.player(yourMark));
 
-            if (selectedButton.size() == 9) {
+            if (engine.isOver()) {
                 continue;
             }
-            // update counts for rows, columns and diagonals
-            // based on local user action
-            updateStateByLocalPlayer(buttonId);
             // get automated player next movement
-            int n = getAutoPlayerNextMove();
-            // update counts for rows, columns and diagonals
-            // based on new movement of automated player
-            updateStateByAutoPlayer(n);
-            selectedButton.add(n);
-            String msg2 = n + " " + myMark;
-            output.writeBytes(msg2);
-            output.flush();
-            logs.println("next movement of auto player" + " " + msg2);
-            logs.flush();
+            long start = System.nanoTime();
+            int n = ai.nextMove(engine, GameEngine.X);
+            Metrics.AI_DECISION.record(System.nanoTime() - start);
+            engine.play(n, GameEngine.player(myMark));
+            msg.set(Message.MOVE, (byte) myMark.charAt(0), n);
+            link.write(msg);
+            logs.log("next movement of auto player ", msg);
         }
     }
 
+    /**
+     * Announces my board size if it isn't the classic 3x3, which needs the
+     * binary format.
+     */
+    private void sendConfig() throws IOException {
+        if (!(engine instanceof GameEngine)) {
+            link.write(new Message().config(engine));
+        }
+    }
+
+    /**
+     * @return true if the binary format should be offered to my counterpart
+     */
+    private boolean offerBinary() {
+        // a board other than 3x3 can't be announced in the legacy format
+        return MessageStream.binaryRequested() || !(engine instanceof GameEngine);
+    }
+
+    /**
+     * Is the constructor that, upon receiving the "service" option, plays
+     * against an AutoPlayerService instead of launching a new auto player
+     * through JSCH. As with "auto", the local user plays first.
+     *
+     * @param hostname the service's ip address
+     * @param port     the service's port
+     */
+    public OnlineTicTacToe(String hostname, int port) {
+        long start = System.nanoTime();
+        try {
+            Socket client = new Socket(hostname, port);
+            client.setTcpNoDelay(true);
+            input = new DataInputStream(client.getInputStream());
+            output = new DataOutputStream(client.getOutputStream());
+            link = new MessageStream(input, output, offerBinary());
+            sendConfig();
+        } catch (IOException ioe) {
+            error(ioe);
+        }
+        Metrics.CONNECT_SETUP.record(System.nanoTime() - start);
+        Metrics.ACTIVE_GAMES.increment();
+        // set up a window
+        makeWindow(true); // I'm a former
+        // start my counterpart thread
+        Counterpart counterpart = new Counterpart();
+        counterpart.start();
+    }
+
+    /**
+     * Is the constructor that plays over an already established transport,
+     * (e.g., a pipe to an auto player in this process).
+     *
+     * @param transport the transport to my counterpart
+     * @param amFormer  true if I play first
+     */
+    public OnlineTicTacToe(Transport transport, boolean amFormer) {
+        long start = System.nanoTime();
+        play(transport, amFormer, start);
+    }
+
+    /**
+     * Starts a game over an established transport: brings up a window and
+     * starts a slave thread for listening to my counterpart.
+     *
+     * @param transport the transport to my counterpart
+     * @param amFormer  true if I play first
+     * @param start     when setting up the transport began
+     */
+    private void play(Transport transport, boolean amFormer, long start) {
+        try {
+            input = transport.input();
+            output = transport.output();
+            link = new MessageStream(input, output, offerBinary());
+            sendConfig();
+        } catch (IOException ioe) {
+            error(ioe);
+        }
+        Metrics.CONNECT_SETUP.record(System.nanoTime() - start);
+        Metrics.ACTIVE_GAMES.increment();
+        // set up a window
+        makeWindow(amFormer);
+        // start my counterpart thread
+        Counterpart counterpart = new Counterpart();
+        counterpart.start();
+    }
+
+    /**
+     * Is the constructor that, upon receiving the "lobby" option, joins the
+     * lobby of a GameServer started with "lobby" instead of polling for my
+     * counterpart. The server matches me with a player of a similar rating
+     * and answers my JOIN with my mark on the same connection.
+     *
+     * @param hostname the server's ip address
+     * @param port     the server's port
+     * @param rating   my rating, (i.e., -Dttt.rating), 0 through to
+     *                 Message.MAX_RATING
+     */
+    public OnlineTicTacToe(String hostname, int port, int rating) {
+        Message join = new Message().join(rating);
+        lobby(hostname, port, join);
+    }
+
+    /**
+     * Is the constructor that, upon receiving the "lobby" option with
+     * -Dttt.resume, comes back to a match that a GameServer restarted with
+     * -Dttt.journal recovered. The match goes on once my counterpart is back
+     * as well: the server sends the board and whose turn it is.
+     *
+     * @param hostname the server's ip address
+     * @param port     the server's port
+     * @param gameId   the match's id, (i.e., printed when it was joined)
+     * @param mark     'O' or 'X', (i.e., my mark in that match)
+     */
+    public OnlineTicTacToe(String hostname, int port, int gameId, char mark) {
+        Message join = new Message().set(Message.JOIN, (byte) mark, 0);
+        join.gameId = gameId;
+        lobby(hostname, port, join);
+    }
+
+    /**
+     * Joins the lobby of a GameServer and starts the game it matches me to.
+     *
+     * @param hostname the server's ip address
+     * @param port     the server's port
+     * @param join     the JOIN to send, with a rating or the match to resume
+     */
+    private void lobby(String hostname, int port, Message join) {
+        long start = System.nanoTime();
+        boolean resume = (join.gameId != 0);
+        Message msg = new Message();
+        try {
+            Socket client = new Socket(hostname, port);
+            client.setTcpNoDelay(true);
+            input = new DataInputStream(client.getInputStream());
+            output = new DataOutputStream(client.getOutputStream());
+            // JOIN is binary only
+            link = new MessageStream(input, output, true);
+            link.write(join);
+            do {
+                link.read(msg);
+            } while (msg.type != Message.JOIN);
+            // e.g., for a Spectator to watch
+            System.err.println((resume ? "resumed game " : "joined game ") + msg.gameId
+                    + " as " + (char) msg.mark);
+            if (!resume) {
+                // a resumed match keeps its board, which the server sends
+                sendConfig();
+            }
+        } catch (IOException ioe) {
+            error(ioe);
+        }
+        // the time spent waiting in the lobby included
+        Metrics.CONNECT_SETUP.record(System.nanoTime() - start);
+        Metrics.ACTIVE_GAMES.increment();
+        // set up a window
+        makeWindow(msg.mark == 'O');
+        // start my counterpart thread
+        Counterpart counterpart = new Counterpart();
+        counterpart.start();
+    }
+
     /**
      * Is the constructor that, upon receiving the "auto" option,
      * launches a remote OnlineTicTacToe through JSCH. This
@@ -234,12 +463,18 @@ public class OnlineTicTacToe implements ActionListener {
                 = "java -cp " + cur_dir + "/jsch-0.1.54.jar:" + cur_dir +
                 " OnlineTicTacToe";
         Connection connection = null;
+        long start = System.nanoTime();
         try {
             connection = new Connection(username, password,
                     hostname, command);
             // the main body of the master server
             input = connection.in;
             output = connection.out;
+            // the remote auto player is always new enough to speak binary
+            link = new MessageStream(input, output, offerBinary());
+            sendConfig();
+            Metrics.CONNECT_SETUP.record(System.nanoTime() - start);
+            Metrics.ACTIVE_GAMES.increment();
             // set up a window
             makeWindow(true); // I'm a former
             // start my counterpart thread
@@ -253,13 +488,16 @@ public class OnlineTicTacToe implements ActionListener {
     /**
      * Is the constructor that sets up a TCP connection with my counterpart,
      * brings up a game window, and starts a slave thread for listenning to
-     * my counterpart.
+     * my counterpart. Given -Dttt.transport=unix, which both players must
+     * then be given, players on the same host meet at a Unix domain socket
+     * instead.
      *
      * @param my counterpart's ip address
      * @param my counterpart's port
      */
     public OnlineTicTacToe(InetAddress addr, int port) {
         // set up a TCP connection with my counterpart
+        long start = System.nanoTime();
 
         boolean playingOnSameMachine = false;
 
@@ -279,6 +517,17 @@ public class OnlineTicTacToe implements ActionListener {
 
         }
 
+        if (playingOnSameMachine && Transport.rendezvousRequested()) {
+            // meet at a Unix domain socket instead of polling over TCP
+            try {
+                ChannelTransport local = ChannelTransport.rendezvous(port);
+                play(local, local.accepted(), start);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // no Unix domain sockets here, so fall back to TCP
+            }
+        }
+
         ServerSocket server = null;
         boolean workAsClient = false;
         boolean workAsServer = false;
@@ -368,9 +617,15 @@ public class OnlineTicTacToe implements ActionListener {
 
             input = new DataInputStream(client.getInputStream());
             output = new DataOutputStream(client.getOutputStream());
+            // offer binary only if told that my counterpart understands it
+            link = new MessageStream(input, output, offerBinary());
+            sendConfig();
         } catch (IOException ioe) {
             //error(ioe);
         }
+        // the time spent in the accept/connect loop above
+        Metrics.CONNECT_SETUP.record(System.nanoTime() - start);
+        Metrics.ACTIVE_GAMES.increment();
         // set up a window
         makeWindow(success); // or makeWIndow( false );
         // start my counterpart thread
@@ -379,33 +634,35 @@ public class OnlineTicTacToe implements ActionListener {
     }
 
     /**
-     * Creates a 3x3 window for the tic-tac-toe game
+     * Creates a rows x cols window for the tic-tac-toe game, with a row of
+     * New Game, Switch Turn and Exit Game buttons below
      *
      * @param true if this window is created by the former, (i.e., the
      *             person who starts first. Otherwise false.
      */
     private void makeWindow(boolean amFormer) {
-        myTurn[0] = amFormer;
         myMark = (amFormer) ? "O" : "X"; // 1st person uses "O"
+        turn.set(Turn.of(myMark, amFormer));
         yourMark = (amFormer) ? "X" : "O"; // 2nd person uses "X"
         // create a window
         window = new JFrame("OnlineTicTacToe(" +
                 ((amFormer) ? "former)" : "latter)") + myMark);
-        window.setSize(300, 300);
+        window.setSize(Math.max(300, 40 * engine.cols()),
+                Math.max(300, 40 * (engine.rows() + 1)));
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        window.setLayout(new GridLayout(4, 3));
-        // initialize all 12 cells.
+        window.setLayout(new GridLayout(engine.rows() + 1, engine.cols()));
+        // initialize all cells and the 3 control buttons.
         for (int i = 0; i < NBUTTONS; i++) {
             button[i] = new JButton();
-            if (i >= 9) {
-                switch (i) {
-                    case 9:
+            if (i >= engine.cells()) {
+                switch (i - engine.cells()) {
+                    case 0:
                         button[i].setText("New Game");
                         break;
-                    case 10:
+                    case 1:
                         button[i].setText("Switch Turn");
                         break;
-                    case 11:
+                    case 2:
                         button[i].setText("Exit Game");
                         break;
                     default:
@@ -428,7 +685,7 @@ public class OnlineTicTacToe implements ActionListener {
      * @param true if it has been marked in success
      */
     private boolean markButton(int i, final String mark) {
-        if (button[i].getText().equals("")) {
+        if (engine.play(i, GameEngine.player(mark))) {
             button[i].setText(mark);
             button[i].setEnabled(false);
 
@@ -441,8 +698,8 @@ public class OnlineTicTacToe implements ActionListener {
      * Checks which button has been clicked
      *
      * @param an event passed from AWT
-     * @return an integer (0 through to 8) that shows which button has been
-     * clicked. -1 upon an error.
+     * @return an integer (0 through to NBUTTONS - 1) that shows which button
+     * has been clicked. -1 upon an error.
      */
     private int whichButtonClicked(ActionEvent event) {
         for (int i = 0; i < NBUTTONS; i++) {
@@ -452,24 +709,17 @@ public class OnlineTicTacToe implements ActionListener {
         return -1;
     }
 
-    /**
-     * Checks if the i-th button has been marked with mark( "O" or "X" ).
-     *
-     * @param the i-th button
-     * @param a   mark ( "O" or "X" )
-     * @return true if the i-th button has been marked with mark.
-     */
-    private boolean buttonMarkedWith(int i, String mark) {
-        return button[i].getText().equals(mark);
-    }
-
     /**
      * Pops out another small window indicating that mark("O" or "X") won!
+     * The window isn't modal, so the game goes on behind it.
      *
      * @param a mark ( "O" or "X" )
      */
     private void showWon(String mark) {
-        JOptionPane.showMessageDialog(null, mark + " won!");
+        JDialog dialog = new JOptionPane(mark + " won!", JOptionPane.INFORMATION_MESSAGE)
+                .createDialog(window, "Message");
+        dialog.setModal(false);
+        dialog.setVisible(true);
     }
 
     /**
@@ -479,49 +729,49 @@ public class OnlineTicTacToe implements ActionListener {
      * <li> check which button was clicked with whichButtonClicked( event ),
      * <li> mark the corresponding button with markButton( buttonId, mark ),
      * <li> send this informatioin to my counterpart,
-     * <li> checks if the game was completed with
-     * buttonMarkedWith( buttonId, mark )
+     * <li> checks if the game was completed with checkWinning( mark )
      * <li> shows a winning message with showWon( )
      */
     public void actionPerformed(ActionEvent event) {
         try {
             int i = whichButtonClicked(event);
-            if (i < 9) {
-                if (myTurn[0] == true) {
-                    markButton(i, myMark);
-                    String msg = i + " " + myMark;
+            if (i < 0) {
+                return;
+            }
+            if (i < engine.cells()) {
+                Turn now = turn.get();
+                // make my turn disable until the counterpart plays; taking
+                // it atomically lets a double click move only once
+                if (now.mine && turn.compareAndSet(now, Turn.of(now.mark, false))) {
+                    if (!markButton(i, now.mark)) {
+                        turn.set(now);
+                        return;
+                    }
                     // write local users action, pressed buttonID with mark
-                    output.write(msg.getBytes());
-                    output.flush();
-                    // make my turn disable until the counterpart plays
-                    myTurn[0] = false;
+                    moveSentAt = System.nanoTime();
+                    link.write(Message.MOVE, (byte) now.mark.charAt(0), i);
 
                     // after every movement check whether it makes winning
                     // if wins, show the winning message
-                    if (checkWinning(myMark)) {
-                        showWon(myMark);
+                    if (checkWinning(now.mark)) {
+                        showWon(now.mark);
                     }
                 }
             } else {
                 // additional new features, asking for new games, asking for
                 // switching turn and asking for exit games
-                switch (i) {
-                    case 9:
-                        output.write("NewGame".getBytes());
-                        output.flush();
+                switch (i - engine.cells()) {
+                    case 0:
+                        link.write(Message.NEW_GAME, (byte) 0, 0);
                         reset(false);
                         break;
-                    case 10:
-                        output.write("SwitchTurn".getBytes());
-                        output.flush();
+                    case 1:
+                        link.write(Message.SWITCH_TURN, (byte) 0, 0);
                         reset(true);
                         break;
-                    case 11:
-                        output.write("ExitGame".getBytes());
-                        output.flush();
-
-                        output.close();
-                        input.close();
+                    case 2:
+                        link.write(Message.EXIT_GAME, (byte) 0, 0);
+                        link.close();
                         System.exit(-1);
                         break;
                     default:
@@ -540,16 +790,17 @@ public class OnlineTicTacToe implements ActionListener {
 
     void reset(boolean switchTurn) {
 
+        engine.clear();
         for (int i = 0; i < NBUTTONS; i++) {
-            if (i >= 9) {
-                switch (i) {
-                    case 9:
+            if (i >= engine.cells()) {
+                switch (i - engine.cells()) {
+                    case 0:
                         button[i].setText("New Game");
                         break;
-                    case 10:
+                    case 1:
                         button[i].setText("Switch Turn");
                         break;
-                    case 11:
+                    case 2:
                         button[i].setText("Exit Game");
                         break;
                     default:
@@ -565,107 +816,76 @@ public class OnlineTicTacToe implements ActionListener {
         }
         // asking for switching turn will make the player who started the
         // game last time first, this time that player would be second player.
+        String mark = turn.get().mark;
         if (switchTurn) {
-            if (myMark.equals("O")) {
-                myMark = "X";
-                myTurn[0] = false;
-            } else {
-                myMark = "O";
-                myTurn[0] = true;
-            }
-        } else {
-            if (myMark.equals("O")) {
-                myTurn[0] = true;
-            } else {
-                myTurn[0] = false;
-            }
+            mark = mark.equals("O") ? "X" : "O";
         }
+        // "O" always starts
+        turn.set(Turn.of(mark, mark.equals("O")));
 
 
     }
 
     /**
-     * for each player movement, this method invokes other method return true if the player win,
-     * otherwise returns false
+     * for each player movement, this method asks the game engine
+     * and returns true if the player wins, otherwise returns false
      */
     boolean checkWinning(String mark) {
-        return checkrow(mark) || checkcolumn(mark) || checkDiagonal1(mark) || checkDiagonal2(mark);
-
+        return engine.hasWon(GameEngine.player(mark));
     }
 
     /**
-     * check if any rows contain the given marks to be winning
+     * Hands a message from my counterpart over to the EDT. A burst of
+     * messages arriving before the EDT gets to them is rendered by a single
+     * task, whose button updates Swing paints in one go, and the reader
+     * never waits for the window.
+     *
+     * @param msg the message, copied
      */
-
-    boolean checkrow(String mark) {
-        for (int i = 0; i < 7; i += 3) {
-            int count = 0;
-            for (int j = i; j < i + 3; j++) {
-                if (!buttonMarkedWith(j, mark)) {
-                    break;
-                } else {
-                    count++;
-                }
-            }
-            if (count == 3) {
-                return true;
-            }
-
+    private void post(Message msg) {
+        inbox.add(new Message().copy(msg));
+        if (renderPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::render);
         }
-        return false;
     }
 
     /**
-     * check if any columns contain the given marks to be winning
+     * Applies every message waiting in the inbox to the board, the buttons
+     * and the turn, (i.e., the EDT's state), in order.
      */
-    boolean checkcolumn(String mark) {
-        for (int i = 0; i < 3; i++) {
-            int count = 0;
-            for (int j = i; j < i + 7; j += 3) {
-
-                if (!buttonMarkedWith(j, mark)) {
-                    break;
-                } else {
-                    count++;
+    private void render() {
+        // cleared first, so a message posted while draining is never missed
+        renderPending.set(false);
+        Message msg;
+        while ((msg = inbox.poll()) != null) {
+            if (msg.type == Message.NEW_GAME) {
+                reset(false);
+            } else if (msg.type == Message.SWITCH_TURN) {
+                reset(true);
+            } else if (msg.type == Message.JOIN) {
+                // whose turn it is in a resumed match
+                Turn t = turn.get();
+                turn.set(Turn.of(t.mark, msg.cell == t.mark.charAt(0)));
+            } else if (msg.type == Message.MOVE) {
+                String marks = (msg.mark == 'O') ? "O" : "X";
+                // reflects opposites action in own OnlineTicTacToe window
+                markButton(msg.cell, marks);
+                // a resumed match replays my own moves as well
+                Turn t = turn.get();
+                turn.set(Turn.of(t.mark, !marks.equals(t.mark)));
+                // check weather opposite players action
+                // makes a winning situation or not
+                if (checkWinning(marks)) {
+                    showWon(marks);
                 }
             }
-            if (count == 3) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    /**
-     * check if diagonal 1 contains the given marks to be winning
-     */
-    boolean checkDiagonal1(String mark) {
-        for (int i = 0; i < 9; i += 4) {
-            if (!buttonMarkedWith(i, mark)) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    /**
-     * check if diagonal 2 contains the given marks to be winning
-     */
-    boolean checkDiagonal2(String mark) {
-        for (int i = 2; i < 7; i += 2) {
-            if (!buttonMarkedWith(i, mark)) {
-                return false;
-            }
         }
-
-        return true;
     }
 
     /**
      * This is a reader thread that keeps reading from and behaving as my
-     * counterpart.
+     * counterpart. It only reads: the window is updated by the EDT, to which
+     * every message is posted.
      */
     private class Counterpart extends Thread {
         /**
@@ -673,37 +893,35 @@ public class OnlineTicTacToe implements ActionListener {
          */
         @Override
         public void run() {
-
+            Message msg = new Message();
             while (true) {
                 try {
-                    // read opposite player's movement
-                    while (input.available() <= 0) {
-                        int i = 100;
+                    // read opposite player's movement, blocking until it arrives
+                    try {
+                        link.read(msg);
+                    } catch (EOFException e) {
+                        // my counterpart has gone
+                        System.exit(-1);
                     }
-
-                    byte[] bytes = new byte[1024];
-                    int length = input.read(bytes);
-                    String str = new String(bytes, 0, length, StandardCharsets.UTF_8);
-                    if (str.equals("NewGame")) {
-                        reset(false);
-                    } else if (str.equals("SwitchTurn")) {
-                        reset(true);
-                    } else if (str.equals("ExitGame")) {
-                        input.close();
-                        output.close();
+                    if (msg.type == Message.NEW_GAME || msg.type == Message.SWITCH_TURN
+                            || msg.type == Message.JOIN) {
+                        post(msg);
+                    } else if (msg.type == Message.EXIT_GAME) {
+                        link.close();
                         System.exit(-1);
-                    } else {
-                        String[] msg = str.split(" ");
-                        int i = Integer.parseInt(msg[0]);
-                        String marks = msg[1];
-                        // reflects opposites action in own OnlineTicTacToe window
-                        markButton(i, marks);
-                        myTurn[0] = true;
-                        // check weather opposite players action
-                        // makes a winning situation or not
-                        if (checkWinning(marks)) {
-                            showWon(marks);
+                    } else if (msg.type == Message.CONFIG) {
+                        if (!msg.configures(engine)) {
+                            System.err.println("my counterpart plays on " + msg
+                                    + ", use the same -Dttt.board");
+                            System.exit(-1);
+                        }
+                    } else if (msg.type == Message.MOVE) {
+                        long sentAt = moveSentAt;
+                        if (sentAt != 0) {
+                            Metrics.MOVE_RTT.record(System.nanoTime() - sentAt);
+                            moveSentAt = 0;
                         }
+                        post(msg);
                     }
                 } catch (IOException ioe) {
                     error(ioe);
@@ -711,169 +929,4 @@ public class OnlineTicTacToe implements ActionListener {
             }
         }
     }
-    //  Intelligent Automated player's code
-
-    /**
-     * PART of AUTOMATED Player, to make the automated player intelligent.
-     * Update the all rows, columns and diagonals count based
-     * on the auto player movement
-     *
-     * @param buttonIndex button id that choosen by auto player for next movement
-     */
-
-    void updateStateByAutoPlayer(int buttonIndex) {
-        String rowKey = "r" + buttonIndex / 3;
-        String colKey = "c" + buttonIndex % 3;
-
-        stateMap.put(rowKey, -1);
-        if (stateMapAuto.get(rowKey) != -1) {
-            stateMapAuto.put(rowKey, stateMapAuto.get(rowKey) + 1);
-        }
-        stateMap.put(colKey, -1);
-
-        if (stateMapAuto.get(colKey) != -1) {
-            stateMapAuto.put(colKey, stateMapAuto.get(colKey) + 1);
-        }
-
-
-        if (diag1.contains(buttonIndex)) {
-            stateMap.put("d1", -1);
-            if (stateMapAuto.get("d1") != -1) {
-                stateMapAuto.put("d1", stateMapAuto.get("d1") + 1);
-            }
-        }
-        if (diag2.contains(buttonIndex)) {
-            stateMap.put("d2", -1);
-            if (stateMapAuto.get("d2") != -1) {
-                stateMapAuto.put("d2", stateMapAuto.get("d2") + 1);
-            }
-        }
-
-    }
-
-    /***
-     * PART OF AUTOMATED player, to make the automated player intelligent
-     * Update the all rows, columns and diagonals count
-     * based on local user movement
-     * @param buttonIndex button id that pressed by local user
-     */
-    void updateStateByLocalPlayer(int buttonIndex) {
-        String rowKey = "r" + buttonIndex / 3;
-        String colKey = "c" + buttonIndex % 3;
-
-        if (stateMap.get(rowKey) != -1) {
-            stateMap.put(rowKey, stateMap.get(rowKey) + 1);
-        }
-        stateMapAuto.put(rowKey, -1);
-
-        if (stateMap.get(colKey) != -1) {
-            stateMap.put(colKey, stateMap.get(colKey) + 1);
-        }
-        stateMapAuto.put(colKey, -1);
-
-
-        if (diag1.contains(buttonIndex) && stateMap.get("d1") != -1) {
-            stateMap.put("d1", stateMap.get("d1") + 1);
-        }
-
-        stateMapAuto.put("d1", -1);
-
-        if (diag2.contains(buttonIndex) && stateMap.get("d2") != -1) {
-            stateMap.put("d2", stateMap.get("d2") + 1);
-        }
-        stateMapAuto.put("d2", -1);
-
-    }
-
-    /***
-     * This method finds the best position for auto player's
-     * next action, that will prevent the local user to win
-     * or will make auto player win based on the
-     * @return the button number that would the auto player next action
-     */
-    int getAutoPlayerNextMove() {
-
-        // if button 4 is not pressed by local user
-        // then auto player will press button 4 first
-        // that position reduce the chance of winning for local user
-        if (!selectedButton.contains(4)) {
-            return 4;
-        }
-        // otherwise it will select another button
-        // based on the high probabilty of auto player
-        // winning, other wise it will choose a button that
-        // will prevent local user to win
-        int count = -1;
-        String keyIndex = null;
-        String autoKey = null;
-
-        for (String key : stateMap.keySet()) {
-            if (stateMap.get(key) > count) {
-                count = stateMap.get(key);
-                keyIndex = key;
-            }
-
-            if (stateMapAuto.get(key) == 2) {
-                autoKey = key;
-            }
-        }
-
-        if (autoKey != null) {
-            return getKeyButtonIndex(autoKey);
-        } else {
-            return getKeyButtonIndex(keyIndex);
-        }
-
-
-    }
-
-    int getKeyButtonIndex(String keyIndex) {
-        if (keyIndex.startsWith("r")) {
-            int i = Integer.parseInt(keyIndex.split("r")[1]);
-            int row = i * 3;
-            for (int j = row; j < row + 3; j++) {
-                if (!selectedButton.contains(j)) {
-                    return j;
-                }
-            }
-        }
-
-        if (keyIndex.startsWith("c")) {
-            int i = Integer.parseInt(keyIndex.split("c")[1]);
-
-            for (int j = i; j < i + 7; j += 3) {
-                if (!selectedButton.contains(j)) {
-                    return j;
-                }
-            }
-        }
-
-        if (keyIndex.equals("d1")) {
-            for (Integer i : diag1) {
-                if (!selectedButton.contains(i)) {
-                    return i;
-                }
-            }
-        }
-
-        if (keyIndex.equals("d2")) {
-            for (Integer i : diag2) {
-                if (!selectedButton.contains(i)) {
-                    return i;
-                }
-            }
-        }
-
-        return -1;
-    }
-
-    void clearState() {
-        selectedButton.clear();
-        for (String key : keys) {
-            stateMap.put(key, 0);
-            stateMapAuto.put(key, 0);
-        }
-    }
-
 }
-
@@ -0,0 +1,401 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * OpeningBook is a table of the best move per position, written once by its
+ * generator and mapped read-only into every auto player process that is
+ * given -Dttt.book=FILE. The mapping shares the OS page cache among all
+ * processes on a host, and a lookup reads the mapped bytes in place, so a
+ * new process answers its first move without solving or searching anything.
+ * <p>
+ * A book file is big-endian: a 16-byte header of the magic "TTTB", the
+ * format version, rows, cols, k, the kind of table and #entries, followed by
+ * the table.
+ * <ul>
+ * <li>DIRECT (3x3 only) holds every position, numbered as in PerfectPlayer
+ * in base 3, (i.e., 0: empty, 1: O, 2: X per cell): 3^9 moves for O to move
+ * and then 3^9 for X, a byte each, -1 if the game is over.</li>
+ * <li>HASHED holds the positions of the first plies only, as #entries
+ * sorted 64-bit position keys followed by as many 16-bit moves, which a
+ * lookup binary-searches.</li>
+ * </ul>
+ * A position key XORs a fixed 64-bit mix of (cell, player) per mark, plus a
+ * constant when X is to move; the mix is part of the format, so changing it
+ * means a new version.
+ *
+ * @author Soheli Sultana
+ */
+public class OpeningBook {
+    private static final int MAGIC = 0x54545442;  // "TTTB"
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final byte DIRECT = 1;
+    private static final byte HASHED = 2;
+    private static final int POSITIONS = 19683;   // 3^9
+    private static final long X_TO_MOVE = 0x9e3779b97f4a7c15L;
+
+    private final ByteBuffer table;   // the mapped file, read with absolute gets only
+    private final int rows;
+    private final int cols;
+    private final int k;
+    private final byte kind;
+    private final int count;
+
+    /**
+     * Holds the book of -Dttt.book, opened the first time it is asked for.
+     */
+    private static class Shared {
+        static final OpeningBook BOOK = openShared();
+
+        private static OpeningBook openShared() {
+            String file = System.getProperty("ttt.book");
+            if (file == null) {
+                return null;
+            }
+            try {
+                return open(Paths.get(file));
+            } catch (IOException e) {
+                System.err.println("OpeningBook: not using " + file + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java [-Dttt.board=ROWSxCOLSxK] OpeningBook file "
+                + "[plies(default 4)] [strategy(default perfect on 3x3, otherwise threat)]");
+        System.exit(-1);
+    }
+
+    /**
+     * Generates a book for the board of -Dttt.board: every position on 3x3,
+     * otherwise those of the first plies in which one side follows the
+     * strategy and the other plays anything.
+     *
+     * @param args args[0]: the file to write, (args[1]: #marks up to which
+     *             positions are kept on boards other than 3x3, args[2]: the
+     *             strategy, as named for AutoPlayer.named())
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            usage();
+        }
+        Board board = null;
+        int plies = 4;
+        try {
+            board = Board.parse(System.getProperty("ttt.board"));
+            if (args.length > 1) {
+                plies = Integer.parseInt(args[1]);
+            }
+        } catch (IllegalArgumentException e) {
+            usage();
+        }
+        String name = (args.length > 2) ? args[2]
+                : (board instanceof GameEngine) ? "perfect" : "threat";
+        AutoPlayer strategy = null;
+        try {
+            strategy = AutoPlayer.named(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+        }
+        try {
+            long start = System.nanoTime();
+            int entries = generate(Paths.get(args[0]), board, strategy, plies);
+            System.out.printf("wrote %d positions to %s in %.2f s%n", entries, args[0],
+                    (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Maps a book file and checks its header.
+     *
+     * @param file the book
+     * @return the book
+     * @throws IOException if the file can't be mapped or isn't a book of
+     *                     this version
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        ByteBuffer table;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping outlives the channel
+            table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new OpeningBook(table);
+    }
+
+    /**
+     * @return the book of -Dttt.book, shared by every game in this process,
+     * or null if none is given or it can't be opened
+     */
+    public static OpeningBook shared() {
+        return Shared.BOOK;
+    }
+
+    private OpeningBook(ByteBuffer table) throws IOException {
+        this.table = table;
+        if (table.capacity() < HEADER || table.getInt(0) != MAGIC) {
+            throw new IOException("not an opening book");
+        }
+        if (table.getInt(4) != VERSION) {
+            throw new IOException("book version " + table.getInt(4) + ", expected " + VERSION);
+        }
+        rows = table.get(8);
+        cols = table.get(9);
+        k = table.get(10);
+        kind = table.get(11);
+        count = table.getInt(12);
+        long size = (kind == DIRECT) ? HEADER + 2L * POSITIONS
+                : (kind == HASHED) ? HEADER + 10L * count : -1;
+        if (size != table.capacity() || (kind == DIRECT && (rows != 3 || cols != 3 || k != 3))) {
+            throw new IOException("the book is cut short or corrupt");
+        }
+    }
+
+    /**
+     * @param board a board
+     * @return true if the book is for boards of its size
+     */
+    public boolean fits(Board board) {
+        return board.rows() == rows && board.cols() == cols && board.k() == k;
+    }
+
+    /**
+     * Looks up the move for a position.
+     *
+     * @param board  the current board, which must fit the book
+     * @param player O or X, (i.e., the side to move)
+     * @return the cell to mark, -1 if the position isn't in the book
+     */
+    public int lookup(Board board, int player) {
+        int move;
+        if (kind == DIRECT) {
+            GameEngine engine = (GameEngine) board;
+            move = table.get(HEADER + player * POSITIONS
+                    + index(engine.mask(GameEngine.O), engine.mask(GameEngine.X)));
+        } else {
+            move = search(key(board, player));
+        }
+        // a key collision must not make an illegal move
+        return (move >= 0 && move < board.cells() && board.isFree(move)) ? move : -1;
+    }
+
+    /**
+     * @return the move stored for a key, -1 if none
+     */
+    private int search(long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = table.getLong(HEADER + 8 * middle);
+            if (found < key) {
+                low = middle + 1;
+            } else if (found > key) {
+                high = middle - 1;
+            } else {
+                return table.getShort(HEADER + 8 * count + 2 * middle);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Wraps the book into an auto player, which asks a strategy, created at
+     * its first miss, for the positions the book doesn't hold.
+     *
+     * @param fallback creates the strategy for the positions out of the book
+     * @return the auto player
+     */
+    public AutoPlayer player(Supplier<AutoPlayer> fallback) {
+        return new AutoPlayer() {
+            private AutoPlayer strategy = null;
+
+            @Override
+            public int nextMove(Board board, int player) {
+                int move = lookup(board, player);
+                if (move >= 0) {
+                    return move;
+                }
+                if (strategy == null) {
+                    strategy = fallback.get();
+                }
+                return strategy.nextMove(board, player);
+            }
+        };
+    }
+
+    /**
+     * @return the base-3 number of a 3x3 position
+     */
+    private static int index(int o, int x) {
+        int index = 0;
+        for (int cell = GameEngine.CELLS - 1; cell >= 0; cell--) {
+            index = index * 3 + ((o >> cell) & 1) + 2 * ((x >> cell) & 1);
+        }
+        return index;
+    }
+
+    /**
+     * @return the key of a position with player to move
+     */
+    static long key(Board board, int player) {
+        long key = (player == GameEngine.X) ? X_TO_MOVE : 0;
+        for (int cell = 0; cell < board.cells(); cell++) {
+            int mark = board.get(cell);
+            if (mark != GameEngine.NONE) {
+                key ^= mix(2L * cell + mark + 1);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return splitmix64's finalizer of z
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Writes a book, first to a temporary file that is then renamed, so that
+     * processes mapping the old book keep reading it whole.
+     *
+     * @param file     the book to write
+     * @param board    an empty board of the book's size
+     * @param strategy the strategy whose moves the book holds
+     * @param plies    #marks up to which positions are kept, except on 3x3
+     * @return #positions written
+     */
+    static int generate(Path file, Board board, AutoPlayer strategy, int plies)
+            throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp.toFile());
+        int entries;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(board.rows());
+            out.writeByte(board.cols());
+            out.writeByte(board.k());
+            if (board instanceof GameEngine) {
+                byte[][] moves = solve((GameEngine) board, strategy);
+                out.writeByte(DIRECT);
+                out.writeInt(POSITIONS);
+                out.write(moves[GameEngine.O]);
+                out.write(moves[GameEngine.X]);
+                entries = 2 * POSITIONS;
+            } else {
+                TreeMap<Long, Integer> book = new TreeMap<>();
+                explore(board, strategy, plies, GameEngine.O, new ArrayList<>(), book);
+                explore(board, strategy, plies, GameEngine.X, new ArrayList<>(), book);
+                out.writeByte(HASHED);
+                out.writeInt(book.size());
+                for (long key : book.keySet()) {
+                    out.writeLong(key);
+                }
+                for (int move : book.values()) {
+                    out.writeShort(move);
+                }
+                entries = book.size();
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return entries;
+    }
+
+    /**
+     * @return the strategy's move in every 3x3 position, by player and
+     * position number
+     */
+    private static byte[][] solve(GameEngine engine, AutoPlayer strategy) {
+        byte[][] moves = new byte[2][POSITIONS];
+        for (int o = 0; o <= GameEngine.FULL; o++) {
+            for (int x = 0; x <= GameEngine.FULL; x++) {
+                if ((o & x) != 0) {
+                    continue;
+                }
+                engine.clear();
+                for (int cell = 0; cell < GameEngine.CELLS; cell++) {
+                    if ((o & (1 << cell)) != 0) {
+                        engine.play(cell, GameEngine.O);
+                    } else if ((x & (1 << cell)) != 0) {
+                        engine.play(cell, GameEngine.X);
+                    }
+                }
+                for (int player = GameEngine.O; player <= GameEngine.X; player++) {
+                    moves[player][index(o, x)] = (byte) (engine.isOver() ? -1
+                            : strategy.nextMove(engine, player));
+                }
+            }
+        }
+        engine.clear();
+        return moves;
+    }
+
+    /**
+     * Collects the positions up to plies marks in which side follows the
+     * strategy and its opponent tries every move.
+     *
+     * @param moves the moves leading to the current position, O's first
+     * @param book  the moves collected so far, by position key
+     */
+    private static void explore(Board board, AutoPlayer strategy, int plies, int side,
+                                List<Integer> moves, Map<Long, Integer> book) {
+        board.clear();
+        for (int i = 0; i < moves.size(); i++) {
+            board.play(moves.get(i), (i % 2 == 0) ? GameEngine.O : GameEngine.X);
+        }
+        int player = (moves.size() % 2 == 0) ? GameEngine.O : GameEngine.X;
+        if (moves.size() > plies || board.isOver()) {
+            return;
+        }
+        if (player == side) {
+            long key = key(board, player);
+            if (book.containsKey(key)) {
+                return; // reached before in another order
+            }
+            int move = strategy.nextMove(board, player);
+            book.put(key, move);
+            moves.add(move);
+            explore(board, strategy, plies, side, moves, book);
+            moves.remove(moves.size() - 1);
+        } else {
+            List<Integer> free = new ArrayList<>();
+            for (int cell = 0; cell < board.cells(); cell++) {
+                if (board.isFree(cell)) {
+                    free.add(cell);
+                }
+            }
+            for (int cell : free) {
+                moves.add(cell);
+                explore(board, strategy, plies, side, moves, book);
+                moves.remove(moves.size() - 1);
+            }
+        }
+    }
+}
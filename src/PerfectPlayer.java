@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * PerfectPlayer never loses. Since the whole 3x3 game tree is small, it is
+ * solved once, when this class is loaded, and every move afterwards is a
+ * single lookup into a table of best moves, with no search and no
+ * allocation.
+ * <p>
+ * A position is numbered in base 3, one digit per cell (0: empty, 1: O,
+ * 2: X), which gives 3^9 = 19683 positions per side to move. The minimax
+ * search only visits one representative of each class of positions that
+ * are equal up to rotation and reflection, (i.e., the one with the smallest
+ * number among its eight symmetries), so it solves roughly an eighth of the
+ * positions. The best move of every position is then read off the solved
+ * values and kept in a byte per position.
+ *
+ * @author Soheli Sultana
+ */
+public class PerfectPlayer implements AutoPlayer {
+    private static final int POSITIONS = 19683; // 3^9
+    private static final byte UNKNOWN = Byte.MIN_VALUE;
+
+    // SYMMETRIES[s][i]: where cell i goes under symmetry s
+    private static final int[][] SYMMETRIES = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8}, // identity
+            {2, 5, 8, 1, 4, 7, 0, 3, 6}, // rotate 90
+            {8, 7, 6, 5, 4, 3, 2, 1, 0}, // rotate 180
+            {6, 3, 0, 7, 4, 1, 8, 5, 2}, // rotate 270
+            {2, 1, 0, 5, 4, 3, 8, 7, 6}, // mirror left-right
+            {6, 7, 8, 3, 4, 5, 0, 1, 2}, // mirror top-bottom
+            {0, 3, 6, 1, 4, 7, 2, 5, 8}, // transpose
+            {8, 5, 2, 7, 4, 1, 6, 3, 0}  // anti-transpose
+    };
+    // TERNARY[mask]: the base-3 number with a 1 for each cell in mask
+    private static final int[] TERNARY = new int[GameEngine.FULL + 1];
+    // MAPPED[s][mask]: mask moved by symmetry s
+    private static final int[][] MAPPED = new int[SYMMETRIES.length][GameEngine.FULL + 1];
+    // VALUES[player][canonical position]: the outcome for player to move,
+    // +(1 + #free cells) for a win, so that faster wins score higher
+    private static final byte[][] VALUES = new byte[2][POSITIONS];
+    // MOVES[player][position]: the best move for player, -1 if over
+    private static final byte[][] MOVES = new byte[2][POSITIONS];
+
+    static {
+        for (int mask = 0; mask <= GameEngine.FULL; mask++) {
+            int power = 1;
+            for (int cell = 0; cell < GameEngine.CELLS; cell++, power *= 3) {
+                if ((mask & (1 << cell)) != 0) {
+                    TERNARY[mask] += power;
+                    for (int s = 0; s < SYMMETRIES.length; s++) {
+                        MAPPED[s][mask] |= 1 << SYMMETRIES[s][cell];
+                    }
+                }
+            }
+        }
+        Arrays.fill(VALUES[GameEngine.O], UNKNOWN);
+        Arrays.fill(VALUES[GameEngine.X], UNKNOWN);
+        for (int o = 0; o <= GameEngine.FULL; o++) {
+            for (int x = 0; x <= GameEngine.FULL; x++) {
+                if ((o & x) == 0) {
+                    MOVES[GameEngine.O][index(o, x)] = (byte) bestMove(o, x, GameEngine.O);
+                    MOVES[GameEngine.X][index(o, x)] = (byte) bestMove(o, x, GameEngine.X);
+                }
+            }
+        }
+    }
+
+    private static int index(int o, int x) {
+        return TERNARY[o] + 2 * TERNARY[x];
+    }
+
+    /**
+     * @return the smallest number among the eight symmetries of a position
+     */
+    private static int canonical(int o, int x) {
+        int min = Integer.MAX_VALUE;
+        for (int[] mapped : MAPPED) {
+            min = Math.min(min, index(mapped[o], mapped[x]));
+        }
+        return min;
+    }
+
+    /**
+     * Solves a position by negamax over canonical positions.
+     *
+     * @return the outcome for player to move
+     */
+    private static int value(int o, int x, int player) {
+        int key = canonical(o, x);
+        if (VALUES[player][key] != UNKNOWN) {
+            return VALUES[player][key];
+        }
+        int mine = (player == GameEngine.O) ? o : x;
+        int yours = (player == GameEngine.O) ? x : o;
+        int free = ~(o | x) & GameEngine.FULL;
+        int best;
+        if (GameEngine.isWin(yours)) {
+            best = -(1 + Integer.bitCount(free));
+        } else if (GameEngine.isWin(mine) || free == 0) {
+            // player has already won before moving, or nobody can
+            best = GameEngine.isWin(mine) ? 1 + Integer.bitCount(free) : 0;
+        } else {
+            best = Integer.MIN_VALUE;
+            for (int rest = free; rest != 0; rest &= rest - 1) {
+                int bit = rest & -rest;
+                int v = (player == GameEngine.O)
+                        ? -value(o | bit, x, GameEngine.X)
+                        : -value(o, x | bit, GameEngine.O);
+                best = Math.max(best, v);
+            }
+        }
+        VALUES[player][key] = (byte) best;
+        return best;
+    }
+
+    /**
+     * @return the best move of player in a position, -1 if it is over
+     */
+    private static int bestMove(int o, int x, int player) {
+        int free = ~(o | x) & GameEngine.FULL;
+        if (free == 0 || GameEngine.isWin(o) || GameEngine.isWin(x)) {
+            return -1;
+        }
+        int best = Integer.MIN_VALUE;
+        int move = -1;
+        for (int cell = 0; cell < GameEngine.CELLS; cell++) {
+            int bit = 1 << cell;
+            if ((free & bit) == 0) {
+                continue;
+            }
+            int v = (player == GameEngine.O)
+                    ? -value(o | bit, x, GameEngine.X)
+                    : -value(o, x | bit, GameEngine.O);
+            if (v > best) {
+                best = v;
+                move = cell;
+            }
+        }
+        return move;
+    }
+
+    /**
+     * Looks up the best move.
+     *
+     * @param board  the current board, which must be a GameEngine and not over
+     * @param player O or X, (i.e., the side to move)
+     * @return the cell to mark
+     */
+    @Override
+    public int nextMove(Board board, int player) {
+        if (!(board instanceof GameEngine)) {
+            throw new IllegalArgumentException("PerfectPlayer only plays 3x3");
+        }
+        GameEngine engine = (GameEngine) board;
+        return MOVES[player][index(engine.mask(GameEngine.O), engine.mask(GameEngine.X))];
+    }
+
+    @Override
+    public boolean deterministic() {
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * PipeTransport is a Transport between two players in the same process,
+ * (e.g., the user and an auto player running on another thread), so that
+ * moves never leave the JVM. Each direction is a bounded ring of bytes; a
+ * reader blocks while its ring is empty and a writer while it is full.
+ * <p>
+ * Unlike PipedInputStream, which polls once a second for a writer that has
+ * gone, a reader here is woken as soon as bytes arrive or the other end is
+ * closed.
+ *
+ * @author Soheli Sultana
+ */
+public class PipeTransport implements Transport {
+    private static final int CAPACITY = 4096; // bytes in flight per direction
+
+    private final Pipe in;
+    private final Pipe out;
+    private final InputStream input;
+    private final OutputStream output;
+
+    private PipeTransport(Pipe in, Pipe out) {
+        this.in = in;
+        this.out = out;
+        input = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, len);
+            }
+        };
+        output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Creates both ends of a connection.
+     *
+     * @return two transports, each reading what the other writes
+     */
+    public static PipeTransport[] pair() {
+        Pipe ab = new Pipe();
+        Pipe ba = new Pipe();
+        return new PipeTransport[]{new PipeTransport(ba, ab), new PipeTransport(ab, ba)};
+    }
+
+    @Override
+    public InputStream input() {
+        return input;
+    }
+
+    @Override
+    public OutputStream output() {
+        return output;
+    }
+
+    /**
+     * Closes both directions; my counterpart reads the end of the stream
+     * once it has read what I wrote.
+     */
+    @Override
+    public void close() {
+        in.close();
+        out.close();
+    }
+
+    /**
+     * Is one direction of a connection.
+     */
+    private static class Pipe {
+        private final byte[] ring = new byte[CAPACITY];
+        private int head = 0;    // the next byte to read
+        private int size = 0;    // #bytes not read yet
+        private boolean closed = false;
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (size == 0) {
+                if (closed) {
+                    return -1;
+                }
+                await();
+            }
+            int n = Math.min(len, Math.min(size, CAPACITY - head));
+            System.arraycopy(ring, head, b, off, n);
+            head = (head + n) % CAPACITY;
+            size -= n;
+            notifyAll();
+            return n;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                while (size == CAPACITY && !closed) {
+                    await();
+                }
+                if (closed) {
+                    throw new IOException("pipe closed");
+                }
+                int tail = (head + size) % CAPACITY;
+                int n = Math.min(len, Math.min(CAPACITY - size, CAPACITY - tail));
+                System.arraycopy(b, off, ring, tail, n);
+                size += n;
+                off += n;
+                len -= n;
+                notifyAll();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private void await() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * PositionCache remembers the moves an auto player chose, shared by every
+ * game in the process that plays on the same board size, so that a
+ * position reached again, by any game and up to rotation and reflection,
+ * costs a lookup instead of a decision.
+ * <p>
+ * A position is keyed by the smallest of its Zobrist hashes under the
+ * board's symmetries, (i.e., eight on a square board, four otherwise), and
+ * its move is stored as it falls on that canonical board, to be mapped back
+ * on a hit. The cache holds at most -Dttt.cache entries, (default 65536, 0
+ * to turn it off), in buckets of WAYS slots. A bucket evicts by CLOCK: a hit
+ * marks an entry as referenced, and a new entry replaces the first one the
+ * bucket's hand finds unreferenced, clearing the marks it passes. Lookups
+ * and stores are lock-free, (i.e., a slot changes by compare-and-set only),
+ * and hits, misses and evictions are counted in Metrics.
+ *
+ * @author Soheli Sultana
+ */
+public class PositionCache {
+    private static final int WAYS = 8; // slots per bucket
+    private static final int ENTRIES = Integer.getInteger("ttt.cache", 1 << 16);
+    private static final long X_TO_MOVE = 0x9e3779b97f4a7c15L;
+    // the caches by "ROWSxCOLSxK"
+    private static final ConcurrentHashMap<String, PositionCache> SHARED =
+            new ConcurrentHashMap<>();
+
+    private final int[][] symmetries;  // symmetries[s][cell]: where cell goes under s
+    private final int[][] inverse;     // inverse[s][cell]: where cell comes from under s
+    private final long[] zobrist;      // zobrist[2 * cell + player]
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicIntegerArray hands; // the CLOCK hand of each bucket
+    private final int buckets;
+
+    /**
+     * Is a cached move, immutable but for its referenced mark.
+     */
+    private static class Entry {
+        final long key;
+        final int move;                   // on the canonical board
+        volatile boolean referenced = true;
+
+        Entry(long key, int move) {
+            this.key = key;
+            this.move = move;
+        }
+    }
+
+    /**
+     * @param board a board of the size to cache
+     * @return the cache shared by every game on boards of this size, or null
+     * if -Dttt.cache=0
+     */
+    public static PositionCache shared(Board board) {
+        if (ENTRIES <= 0) {
+            return null;
+        }
+        return SHARED.computeIfAbsent(board.rows() + "x" + board.cols() + "x" + board.k(),
+                size -> new PositionCache(board.rows(), board.cols(), ENTRIES));
+    }
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param rows    #rows of the boards it caches
+     * @param cols    #columns of the boards it caches
+     * @param entries the most entries it holds, rounded up to WAYS times a
+     *                power of 2
+     */
+    public PositionCache(int rows, int cols, int entries) {
+        int cells = rows * cols;
+        symmetries = new int[(rows == cols) ? 8 : 4][cells];
+        inverse = new int[symmetries.length][cells];
+        for (int cell = 0; cell < cells; cell++) {
+            int r = cell / cols;
+            int c = cell % cols;
+            int rr = rows - 1 - r;
+            int cc = cols - 1 - c;
+            symmetries[0][cell] = cell;                // identity
+            symmetries[1][cell] = rr * cols + cc;      // rotate 180
+            symmetries[2][cell] = r * cols + cc;       // mirror left-right
+            symmetries[3][cell] = rr * cols + c;       // mirror top-bottom
+            if (rows == cols) {
+                symmetries[4][cell] = c * cols + r;    // transpose
+                symmetries[5][cell] = cc * cols + rr;  // anti-transpose
+                symmetries[6][cell] = c * cols + rr;   // rotate 90
+                symmetries[7][cell] = cc * cols + r;   // rotate 270
+            }
+        }
+        for (int s = 0; s < symmetries.length; s++) {
+            for (int cell = 0; cell < cells; cell++) {
+                inverse[s][symmetries[s][cell]] = cell;
+            }
+        }
+        zobrist = new long[2 * cells];
+        SplittableRandom rand = new SplittableRandom(cells);
+        for (int i = 0; i < zobrist.length; i++) {
+            zobrist[i] = rand.nextLong();
+        }
+        int n = 1;
+        while ((long) n * WAYS < entries) {
+            n <<= 1;
+        }
+        buckets = n;
+        slots = new AtomicReferenceArray<>(buckets * WAYS);
+        hands = new AtomicIntegerArray(buckets);
+    }
+
+    /**
+     * Wraps a strategy so that it is only asked about positions the cache
+     * doesn't hold.
+     *
+     * @param strategy the strategy, which must be deterministic and choose
+     *                 the same moves as any other sharing this cache
+     * @return the caching auto player
+     * @throws IllegalArgumentException if the strategy isn't deterministic
+     */
+    public AutoPlayer player(AutoPlayer strategy) {
+        if (!strategy.deterministic()) {
+            throw new IllegalArgumentException(strategy.getClass().getName()
+                    + " isn't deterministic, so its moves can't be cached");
+        }
+        return new AutoPlayer() {
+            @Override
+            public int nextMove(Board board, int player) {
+                return PositionCache.this.nextMove(board, player, strategy);
+            }
+
+            @Override
+            public boolean deterministic() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Looks up a position, asking the strategy and storing its move on a
+     * miss.
+     *
+     * @param board    the current board, which must not be over
+     * @param player   O or X, (i.e., the side to move)
+     * @param strategy the strategy to ask on a miss
+     * @return the cell to mark
+     */
+    public int nextMove(Board board, int player, AutoPlayer strategy) {
+        long[] keys = new long[symmetries.length];
+        for (int cell = 0; cell < board.cells(); cell++) {
+            int mark = board.get(cell);
+            if (mark != GameEngine.NONE) {
+                for (int s = 0; s < keys.length; s++) {
+                    keys[s] ^= zobrist[2 * symmetries[s][cell] + mark];
+                }
+            }
+        }
+        int canonical = 0;
+        for (int s = 1; s < keys.length; s++) {
+            if (keys[s] < keys[canonical]) {
+                canonical = s;
+            }
+        }
+        long key = keys[canonical] ^ ((player == GameEngine.X) ? X_TO_MOVE : 0);
+        Entry entry = find(key);
+        if (entry != null) {
+            int move = inverse[canonical][entry.move];
+            // a key collision must not make an illegal move
+            if (board.isFree(move)) {
+                Metrics.CACHE_HITS.increment();
+                return move;
+            }
+        }
+        Metrics.CACHE_MISSES.increment();
+        int move = strategy.nextMove(board, player);
+        store(key, symmetries[canonical][move]);
+        return move;
+    }
+
+    /**
+     * @return the bucket of a key
+     */
+    private int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & (buckets - 1);
+    }
+
+    /**
+     * @return the entry of a key, marked as referenced, or null if none
+     */
+    private Entry find(long key) {
+        int base = bucket(key) * WAYS;
+        for (int i = 0; i < WAYS; i++) {
+            Entry entry = slots.get(base + i);
+            if (entry != null && entry.key == key) {
+                if (!entry.referenced) {
+                    entry.referenced = true; // written only when it changes
+                }
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an entry to a free slot of its bucket or in place of the first
+     * unreferenced one. A store racing another for the same slot gives up,
+     * since the move can always be chosen again.
+     */
+    private void store(long key, int move) {
+        int bucket = bucket(key);
+        int base = bucket * WAYS;
+        Entry added = new Entry(key, move);
+        for (int i = 0; i < WAYS; i++) {
+            Entry entry = slots.get(base + i);
+            if (entry == null) {
+                if (slots.compareAndSet(base + i, null, added)) {
+                    return;
+                }
+            } else if (entry.key == key) {
+                return; // another game got here first
+            }
+        }
+        // a whole turn clears every mark, so a second one finds a victim
+        for (int step = 0; step < 2 * WAYS; step++) {
+            int slot = base + (hands.getAndIncrement(bucket) & (WAYS - 1));
+            Entry entry = slots.get(slot);
+            if (entry.referenced) {
+                entry.referenced = false;
+            } else {
+                if (slots.compareAndSet(slot, entry, added)) {
+                    Metrics.CACHE_EVICTIONS.increment();
+                }
+                return;
+            }
+        }
+    }
+}
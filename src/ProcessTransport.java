@@ -0,0 +1,62 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ProcessTransport is a Transport to a child JVM on this host, talking over
+ * its standard input and output exactly as a process launched through JSCH
+ * does. It stands in for SSH when a master and its slaves are all tried out
+ * on localhost.
+ *
+ * @author Soheli Sultana
+ */
+public class ProcessTransport implements Transport {
+    private final Process process;
+
+    /**
+     * Launches a class of this program in a new JVM with the same class
+     * path. Its standard error goes to mine.
+     *
+     * @param mainClass the class to run
+     * @param args      its arguments
+     */
+    public ProcessTransport(String mainClass, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(List.of(args));
+        process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    @Override
+    public InputStream input() {
+        return process.getInputStream();
+    }
+
+    @Override
+    public OutputStream output() {
+        return process.getOutputStream();
+    }
+
+    /**
+     * Closes the child's standard input and waits for it to exit.
+     */
+    @Override
+    public void close() throws IOException {
+        process.getOutputStream().close();
+        try {
+            process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
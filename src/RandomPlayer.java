@@ -0,0 +1,29 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RandomPlayer marks a free cell chosen uniformly at random on a board of
+ * any size. It is the baseline every other strategy should beat, and since
+ * it draws from the calling thread's own generator, one instance serves
+ * every game on every thread.
+ *
+ * @author Soheli Sultana
+ */
+public class RandomPlayer implements AutoPlayer {
+    @Override
+    public int nextMove(Board board, int player) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        if (board instanceof GameEngine) {
+            // pick the n-th set bit of the free mask
+            int free = ((GameEngine) board).freeMask();
+            for (int n = rand.nextInt(Integer.bitCount(free)); n > 0; n--) {
+                free &= free - 1;
+            }
+            return Integer.numberOfTrailingZeros(free);
+        }
+        int cell;
+        do {
+            cell = rand.nextInt(board.cells());
+        } while (!board.isFree(cell));
+        return cell;
+    }
+}
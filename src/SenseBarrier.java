@@ -0,0 +1,78 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SenseBarrier is a sense-reversing barrier. Every thread decrements one
+ * counter; the last one to arrive resets it and flips a shared sense flag,
+ * which releases the others. Each thread compares the flag with its own
+ * sense, flipped every round, so a thread that races ahead into the next
+ * round can't be confused with one still leaving the last, and a waiter
+ * that wakes up spuriously just goes on waiting.
+ * <p>
+ * Waiters spin for a while and then park; the last thread unparks only the
+ * threads that actually parked, one by one, instead of waking a whole
+ * monitor's worth of threads to fight over its lock. A waiter announces
+ * itself again before every park, since a releaser still finishing the
+ * previous round may have taken its announcement and woken it early.
+ *
+ * @author Soheli Sultana
+ */
+public class SenseBarrier implements Barrier {
+    private static final int PAD = 64; // bytes between two threads' senses
+
+    private final int parties;
+    private final AtomicInteger count;
+    private volatile boolean sense = false;
+    private final boolean[] local;                 // local[id * PAD]: my sense
+    private final AtomicReferenceArray<Thread> parked; // the parked waiters
+
+    /**
+     * @param parties #threads meeting at the barrier
+     */
+    public SenseBarrier(int parties) {
+        if (parties < 1) {
+            throw new IllegalArgumentException("bad #parties " + parties);
+        }
+        this.parties = parties;
+        count = new AtomicInteger(parties);
+        local = new boolean[parties * PAD];
+        parked = new AtomicReferenceArray<>(parties);
+    }
+
+    @Override
+    public void await(int id) {
+        boolean mySense = !local[id * PAD];
+        local[id * PAD] = mySense;
+        if (count.decrementAndGet() == 0) {
+            // the last to arrive: reset for the next round and release all
+            count.set(parties);
+            sense = mySense;
+            for (int i = 0; i < parties; i++) {
+                Thread waiter = parked.getAndSet(i, null);
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+            return;
+        }
+        for (int waits = 0; waits < SPINS; waits++) {
+            if (sense == mySense) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        // announce myself before every look, so that the last thread either
+        // sees me or I see its flip. A releaser of the previous round may
+        // still take my slot and wake me, so the slot is set again each time.
+        Thread me = Thread.currentThread();
+        while (true) {
+            parked.set(id, me);
+            if (sense == mySense) {
+                break;
+            }
+            LockSupport.park(this);
+        }
+        parked.set(id, null);
+    }
+}
@@ -3,47 +3,210 @@ import com.jcraft.jsch.*;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.Console;
 
 public class Server {
+    private static final int TIMEOUT = 30; // default seconds to wait for each host
+
     /**
      * The main() function runs both at the user local and remote machines.
      *
-     * @param args args[0] receives a file name of remote servers
+     * @param args args[0] receives a file name of remote servers, (args[1]
+     *             the seconds to wait for each of them, 30 by default), or
+     *             "barrier" followed by a topology, #rounds and either the
+     *             file name or local:#slaves
      */
     public static void main(String[] args) {
-        if (args.length == 1)
-            new Server(args[0]); // master server to run locally
+        if (args.length > 0 && args[0].equals("barrier")) {
+            if (args.length == 1)
+                barrierSlave();   // a slave of a barrier master
+            else if (args.length == 4)
+                barrierMaster(args[1], args[2], args[3]);
+            else
+                usage();
+        } else if (args.length == 1)
+            new Server(args[0], TIMEOUT); // master server to run locally
+        else if (args.length == 2)
+            new Server(args[0], timeout(args[1]));
         else if (args.length == 0)
             new Server();         // slave servers to run remotely
-        else {
-            // invalid arguments
-            System.err.println(
-                    "usage: java -cp jsch-0.1.54.jar:. JSpace.Server config.txt");
-            System.exit(-1);
+        else
+            usage();              // invalid arguments
+    }
+
+    /**
+     * Parses the seconds to wait for each host, quitting with the usage
+     * unless it is a positive number.
+     *
+     * @param seconds the command-line argument
+     * @return the seconds
+     */
+    private static int timeout(String seconds) {
+        int timeout = 0;
+        try {
+            timeout = Integer.parseInt(seconds);
+        } catch (NumberFormatException e) {
+            usage();
         }
+        if (timeout < 1)
+            usage();
+        return timeout;
+    }
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println(
+                "usage: java -cp jsch-0.1.54.jar:. JSpace.Server config.txt [timeoutSeconds]");
+        System.err.println(
+                "       java -cp jsch-0.1.54.jar:. JSpace.Server barrier central|tree[:radix] "
+                        + "rounds config.txt|local:#slaves");
+        System.exit(-1);
     }
 
     /**
-     * This is the constructor executed at a user-local machine.
+     * Is the reply of a slave, or why there is none.
+     */
+    private static class Reply {
+        final String host;
+        final String msg;        // the slave's message, null upon a failure
+        final Exception failure; // why there is no message
+        final long millis;       // from the start until the reply or failure
+
+        Reply(String host, String msg, Exception failure, long millis) {
+            this.host = host;
+            this.msg = msg;
+            this.failure = failure;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * This is the constructor executed at a user-local machine. It connects
+     * to all remote machines at once and prints their replies in the order
+     * they arrive, so start-up takes as long as the slowest host rather than
+     * all of them together. A host that fails or doesn't reply within
+     * timeout seconds is reported, while the others go on.
      *
      * @param configFile a configuration file name. It must include:
      *                   user account (1st line); password (2nd line);
      *                   and all remote host IP names (the rest).
+     * @param timeout    seconds to wait for each host
      */
-    public Server(String configFile) {
-        final int JschPort = 22;      // Jsch IP port
+    public Server(String configFile, int timeout) {
+        String[] login = login();
+        List<String> hosts = readHosts(configFile);
+        String command = command();
+
+        // establish an ssh2 connection to each remote machine and run
+        // JSpace.Server there, all at once.
+        final String user = login[0];
+        final String pass = login[1];
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, hosts.size()), task -> {
+            Thread thread = new Thread(task);
+            // a host stuck in a handshake must not keep the master alive
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Reply> replies = new ExecutorCompletionService<>(pool);
+        Map<Future<Reply>, String> pending = new HashMap<>();
+        Queue<Connection> connections = new ConcurrentLinkedQueue<>();
+        for (String host : hosts) {
+            pending.put(replies.submit(() -> {
+                try {
+                    Connection connection = Connection.open(user, pass, host, command);
+                    connections.add(connection);
+                    // LAB 3: Have the master server read a message from each of slave
+                    String msg = connection.in.readUTF();
+                    return new Reply(host, msg, null, (System.nanoTime() - start) / 1000000);
+                } catch (Exception e) {
+                    return new Reply(host, null, e, (System.nanoTime() - start) / 1000000);
+                }
+            }), host);
+        }
+
+        // the main body of the master server: print out the messages from
+        // all slaves as they finish
+        List<Reply> failures = new ArrayList<>();
+        long deadline = start + TimeUnit.SECONDS.toNanos(timeout);
+        try {
+            while (!pending.isEmpty()) {
+                Future<Reply> done = replies.poll(deadline - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    break; // the rest timed out
+                }
+                pending.remove(done);
+                Reply reply = done.get();
+                if (reply.msg != null) {
+                    System.out.println(reply.msg + " (" + reply.millis + " ms)");
+                } else {
+                    failures.add(reply);
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        // report the hosts that failed or are still pending
+        for (Reply reply : failures) {
+            System.err.println(reply.host + ": failed after " + reply.millis + " ms: "
+                    + reply.failure);
+        }
+        for (Map.Entry<Future<Reply>, String> late : pending.entrySet()) {
+            late.getKey().cancel(true);
+            System.err.println(late.getValue() + ": no reply within " + timeout + " s");
+        }
+        System.err.println((hosts.size() - failures.size() - pending.size()) + " of "
+                + hosts.size() + " hosts replied in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        pool.shutdownNow();
+
+        // close the ssh2 connection with each remote machine
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * This is the constructor executed at each remote machine.
+     */
+    public Server() {
+        // receive an ssh2 connection from a user-local master server.
+        Connection connection = new Connection();
+
+        // the main body of the slave server
+        try {
+            // LAB 3: Have a slave send a message: Hello from Slave at IP addr
+            String msg = "Hello from Slave at " + InetAddress.getLocalHost().getHostName();
+            connection.out.writeUTF(msg);
+            connection.out.flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
 
+    /**
+     * Reads the user name and password from the console.
+     *
+     * @return the user name and the password
+     */
+    private static String[] login() {
         // Reading keyboard inputs
         Scanner keyboard = new Scanner(System.in);
         String username = null;
         String password = null;
         try {
-            // read the user name from the console                                                            
+            // read the user name from the console
             System.out.print("User: ");
             username = keyboard.nextLine();
 
-            // read the password from the console                                                             
+            // read the password from the console
             Console console = System.console();
             password = new String(console.readPassword("Password: "));
 
@@ -51,8 +214,16 @@ public class Server {
             e.printStackTrace();
             System.exit(-1);
         }
+        return new String[]{username, password};
+    }
 
-        // Read configFile to initialize username, password, and hosts
+    /**
+     * Reads configFile's host names.
+     *
+     * @param configFile a file listing all remote host IP names
+     * @return the host names
+     */
+    private static List<String> readHosts(String configFile) {
         BufferedReader fileReader = null;
         ArrayList<String> hosts = new ArrayList<String>();
         try {
@@ -70,55 +241,110 @@ public class Server {
             e.printStackTrace();
             System.exit(-1);
         }
+        return hosts;
+    }
 
-        // A command to launch remotely:
-        //          java -cp ./jsch-0.1.54.jar:. JSpace.Server
+    /**
+     * @return a command to launch remotely:
+     *         java -cp ./jsch-0.1.54.jar:. JSpace.Server
+     */
+    private static String command() {
         String cur_dir = System.getProperty("user.dir");
-        String command
-                = "java -cp " + cur_dir + "/jsch-0.1.54.jar:" + cur_dir +
-                " Server";
+        return "java -cp " + cur_dir + "/jsch-0.1.54.jar:" + cur_dir + " Server";
+    }
 
-        // establish an ssh2 connection to each remote machine and run
-        // JSpace.Server there.
-        Connection connections[] = new Connection[hosts.size()];
-        for (int i = 0; i < hosts.size(); i++) {
-            // System.out.println( username + "@" + hosts.get( i ) + " to run: " + command );
-            connections[i] = new Connection(username, password,
-                    hosts.get(i), command);
-        }
+    /**
+     * Launches a slave.
+     */
+    private interface Launcher {
+        Transport launch(int i) throws Exception;
+    }
 
-        // the main body of the master server
+    /**
+     * Measures DistributedBarrier as hosts are added: for 1, 2, 4, ... and
+     * all slaves, it launches that many, times rounds barriers across them
+     * and the master, and prints the time per round.
+     *
+     * @param topology "central", or "tree" with an optional radix, 2 by
+     *                 default
+     * @param rounds   #barrier rounds to time
+     * @param slaves   a configuration file listing the remote hosts, or
+     *                 local:n to run n slave JVMs on this host instead
+     */
+    private static void barrierMaster(String topology, String rounds, String slaves) {
+        int radix = 0; // every slave a child of the master
+        int nRounds = 0;
         try {
-            // LAB 3: Have the master server read a message from each of slave
-            // print out the messges from all slaves
-            for (int i = 0; i < hosts.size(); i++) {
-                String msg = (String) connections[i].in.readObject();
-                System.out.println(msg);
+            if (topology.startsWith("tree")) {
+                radix = topology.equals("tree") ? 2 : Integer.parseInt(topology.substring(5));
+            } else if (!topology.equals("central")) {
+                usage();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(-1);
+            nRounds = Integer.parseInt(rounds);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            usage();
+        }
+        if (nRounds < 1 || (topology.startsWith("tree") && radix < 1)) {
+            usage();
         }
 
-        // close the ssh2 connection with each remote machine
-        for (int i = 0; i < hosts.size(); i++) {
-            connections[i].close();
+        int maxSlaves;
+        Launcher launcher;
+        if (slaves.startsWith("local:")) {
+            maxSlaves = 0;
+            try {
+                maxSlaves = Integer.parseInt(slaves.substring(6));
+            } catch (NumberFormatException e) {
+                usage();
+            }
+            launcher = i -> new ProcessTransport("Server", "barrier");
+        } else {
+            String[] login = login();
+            List<String> hosts = readHosts(slaves);
+            String command = command() + " barrier";
+            maxSlaves = hosts.size();
+            launcher = i -> Connection.open(login[0], login[1], hosts.get(i), command);
+        }
+        if (maxSlaves < 1) {
+            usage();
+        }
+
+        System.out.println("topology     slaves  rounds    us/round");
+        // 1, 2, 4, ... and maxSlaves
+        for (int n = 1; ; n = Math.min(n * 2, maxSlaves)) {
+            List<Transport> links = new ArrayList<>();
+            try {
+                for (int i = 0; i < n; i++) {
+                    links.add(launcher.launch(i));
+                }
+                double nanos = DistributedBarrier.master(links, (radix == 0) ? n : radix, nRounds);
+                System.out.printf("%-12s %6d %7d %11.1f%n", topology, n, nRounds, nanos / 1000);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(-1);
+            } finally {
+                for (Transport link : links) {
+                    try {
+                        link.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            if (n == maxSlaves) {
+                break;
+            }
         }
     }
 
     /**
-     * This is the constructor executed at each remote machine.
+     * Is a barrier slave: joins the master's DistributedBarrier over its
+     * standard input and output.
      */
-    public Server() {
-        // receive an ssh2 connection from a user-local master server.
-        Connection connection = new Connection();
-
-        // the main body of the slave server
+    private static void barrierSlave() {
         try {
-            // LAB 3: Have a slave send a message: Hello from Slave at IP addr
-            String msg = "Hello from Slave at " + InetAddress.getLocalHost().getHostName();
-            connection.out.writeObject(msg);
-        } catch (Exception e) {
+            DistributedBarrier.slave(new Connection());
+        } catch (IOException e) {
             e.printStackTrace();
             System.exit(-1);
         }
@@ -0,0 +1,319 @@
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.UserInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SessionPool keeps authenticated SSH sessions per login, (i.e., user@host
+ * and password), so that launching another remote process on a host costs
+ * one exec channel rather than another key exchange and login. A login with
+ * another password never shares a session logged in with the first one,
+ * and the pool keeps no password, only a digest salted per process. A session carries up to
+ * -Dttt.ssh.channels exec channels at once, (10 by default, OpenSSH's
+ * MaxSessions), and another session is opened only when every session to
+ * that host is full.
+ * <p>
+ * Logging in happens outside the pool's lock, so sessions to different hosts
+ * are set up in parallel, while connections to a host whose session is still
+ * logging in wait for that login instead of starting their own.
+ * <p>
+ * A session is checked before it is handed out again and dropped if it has
+ * gone. A background thread sends keep-alives on idle sessions and
+ * disconnects those idle for longer than -Dttt.ssh.idle seconds, (60 by
+ * default); whatever is left is disconnected when the JVM exits.
+ *
+ * @author Soheli Sultana
+ */
+public class SessionPool {
+    private static final int SSH_PORT = 22;
+    private static final int CHANNELS = Integer.getInteger("ttt.ssh.channels", 10);
+    private static final long IDLE_MILLIS = Integer.getInteger("ttt.ssh.idle", 60) * 1000L;
+
+    private static final SessionPool SHARED = new SessionPool();
+
+    /**
+     * Is a pooled session and #channels open on it.
+     */
+    private static class Entry {
+        final Session session;
+        int channels = 0;
+        boolean ready = false;  // T: logged in, F: still logging in
+        boolean failed = false; // T: the login failed
+        boolean doomed = false; // T: invalidated, to be disconnected with its last channel
+        long idleSince = System.currentTimeMillis();
+
+        Entry(Session session) {
+            this.session = session;
+        }
+    }
+
+    private final JSch jsch = new JSch();
+    private final Map<String, List<Entry>> pool = new HashMap<>(); // by key()
+    private final byte[] salt = new byte[16]; // for the password digests in keys
+    private final Map<Session, Entry> entries = new HashMap<>();
+
+    private SessionPool() {
+        new SecureRandom().nextBytes(salt);
+        Thread evictor = new Thread(this::evict, "SessionPool-evictor");
+        evictor.setDaemon(true);
+        evictor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeAll));
+    }
+
+    /**
+     * @return the pool shared by every Connection in this process
+     */
+    public static SessionPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Hands out a session logged in to user@host with this password that
+     * has room for one more channel, logging in only if no pooled session
+     * has room. Every acquire() must
+     * be paired with a release().
+     *
+     * @param username the user account
+     * @param password its password
+     * @param hostname the remote host
+     * @return a connected session
+     */
+    public Session acquire(String username, String password, String hostname)
+            throws JSchException {
+        String key = key(username, password, hostname);
+        Entry entry;
+        synchronized (this) {
+            while (true) {
+                entry = find(key);
+                if (entry == null) {
+                    break;
+                }
+                entry.channels++;
+                while (!entry.ready && !entry.failed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        entry.channels--;
+                        Thread.currentThread().interrupt();
+                        throw new JSchException("interrupted while logging in to "
+                                + username + "@" + hostname);
+                    }
+                }
+                if (entry.ready) {
+                    return entry.session;
+                }
+                // the login I waited for failed, so try one of my own
+            }
+            Session session = jsch.getSession(username, hostname, SSH_PORT);
+            session.setUserInfo(new PasswordInfo(password));
+            // pooled sessions must not keep the JVM alive
+            session.setDaemonThread(true);
+            entry = new Entry(session);
+            entry.channels = 1;
+            pool.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+            entries.put(session, entry);
+        }
+        try {
+            entry.session.connect();
+        } catch (JSchException e) {
+            synchronized (this) {
+                entry.failed = true;
+                drop(entry);
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            entry.ready = true;
+            notifyAll();
+        }
+        return entry.session;
+    }
+
+    /**
+     * @return the key of a login in the pool: user@host and a salted
+     * SHA-256 digest of the password
+     */
+    private String key(String username, String password, String hostname) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+        sha.update(salt);
+        sha.update(String.valueOf(password).getBytes(StandardCharsets.UTF_8));
+        return username + "@" + hostname + "#" + HexFormat.of().formatHex(sha.digest());
+    }
+
+    /**
+     * @return a session to key with room for one more channel, either
+     * logged in or still logging in, or null if there is none
+     */
+    private Entry find(String key) {
+        List<Entry> sessions = pool.get(key);
+        if (sessions == null) {
+            return null;
+        }
+        Iterator<Entry> i = sessions.iterator();
+        while (i.hasNext()) {
+            Entry entry = i.next();
+            if (entry.ready && !entry.session.isConnected()) {
+                // the host or the network dropped it
+                i.remove();
+                entries.remove(entry.session);
+                continue;
+            }
+            if (entry.channels < CHANNELS) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void drop(Entry entry) {
+        entries.remove(entry.session);
+        for (List<Entry> sessions : pool.values()) {
+            sessions.remove(entry);
+        }
+    }
+
+    /**
+     * Gives a session back after its channel was closed.
+     *
+     * @param session a session from acquire()
+     */
+    public synchronized void release(Session session) {
+        Entry entry = entries.get(session);
+        if (entry != null && --entry.channels == 0) {
+            entry.idleSince = System.currentTimeMillis();
+            if (entry.doomed) {
+                entries.remove(session);
+                session.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Drops a session that failed, (e.g., couldn't open a channel), in
+     * place of releasing it, so that it is never handed out again. Its other
+     * channels are left alone, and the session is disconnected once the
+     * last of them is released.
+     *
+     * @param session a session from acquire()
+     */
+    public synchronized void invalidate(Session session) {
+        Entry entry = entries.get(session);
+        if (entry == null) {
+            session.disconnect();
+            return;
+        }
+        for (List<Entry> sessions : pool.values()) {
+            sessions.remove(entry);
+        }
+        entry.doomed = true;
+        release(session);
+    }
+
+    /**
+     * Is the body of the evictor: every few seconds, keeps idle sessions
+     * alive and disconnects those idle for too long or found dead.
+     */
+    private void evict() {
+        while (true) {
+            try {
+                Thread.sleep(Math.min(IDLE_MILLIS, 5000));
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<Session> idle = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                for (List<Entry> sessions : pool.values()) {
+                    Iterator<Entry> i = sessions.iterator();
+                    while (i.hasNext()) {
+                        Entry entry = i.next();
+                        if (!entry.ready) {
+                            continue;
+                        } else if (entry.channels == 0 && (now - entry.idleSince >= IDLE_MILLIS
+                                || !entry.session.isConnected())) {
+                            i.remove();
+                            entries.remove(entry.session);
+                            entry.session.disconnect();
+                        } else if (entry.channels == 0) {
+                            idle.add(entry.session);
+                        }
+                    }
+                }
+            }
+            // a keep-alive may block on a dead network, so send it unlocked;
+            // a session it fails on is found disconnected next time
+            for (Session session : idle) {
+                try {
+                    session.sendKeepAliveMsg();
+                } catch (Exception e) {
+                    session.disconnect();
+                }
+            }
+        }
+    }
+
+    private synchronized void closeAll() {
+        for (Session session : entries.keySet()) {
+            session.disconnect();
+        }
+        entries.clear();
+        pool.clear();
+    }
+
+    /**
+     * Answers JSCH's prompts with a password.
+     */
+    private static class PasswordInfo implements UserInfo {
+        private final String password;
+
+        PasswordInfo(String password) {
+            this.password = password;
+        }
+
+        @Override
+        public String getPassphrase() {
+            return null;
+        }
+
+        @Override
+        public String getPassword() {
+            return password;
+        }
+
+        @Override
+        public boolean promptPassword(String message) {
+            return true;
+        }
+
+        @Override
+        public boolean promptPassphrase(String message) {
+            return true;
+        }
+
+        @Override
+        public boolean promptYesNo(String message) {
+            return true;
+        }
+
+        @Override
+        public void showMessage(String message) {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Spectator watches a match on a GameServer, (i.e., one started by a lobby
+ * or a LoadGenerator), and prints its board whenever it changes. It sends a
+ * WATCH with the match's gameId, after which the server sends the board so
+ * far and then every message the players exchange.
+ *
+ * @author Soheli Sultana
+ */
+public class Spectator {
+    private final MessageStream link;
+    private Board board = new GameEngine(); // a CONFIG tells any other size
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java Spectator ipAddr ipPort(>=5000) gameId");
+        System.exit(-1);
+    }
+
+    /**
+     * Watches a match until it ends.
+     *
+     * @param args args[0]: the server's ip address, args[1]: its port,
+     *             args[2]: the gameId of the match
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            usage();
+        }
+        int port = 0;
+        int gameId = 0;
+        try {
+            port = Integer.parseInt(args[1]);
+            gameId = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        if (port < 5000 || gameId < 1) {
+            usage();
+        }
+        try {
+            new Spectator(args[0], port, gameId).watch();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Asks a GameServer for a match.
+     *
+     * @param hostname the server's ip address
+     * @param port     the server's port
+     * @param gameId   the id of the match to watch
+     */
+    public Spectator(String hostname, int port, int gameId) throws IOException {
+        Socket socket = new Socket(hostname, port);
+        socket.setTcpNoDelay(true);
+        // WATCH is binary only
+        link = new MessageStream(socket.getInputStream(), socket.getOutputStream(), true);
+        Message msg = new Message();
+        msg.gameId = gameId;
+        link.write(msg.set(Message.WATCH, (byte) 0, 0));
+    }
+
+    /**
+     * Prints the board after every change until the match ends.
+     */
+    public void watch() throws IOException {
+        Message msg = new Message();
+        try {
+            while (true) {
+                link.read(msg);
+                switch (msg.type) {
+                    case Message.CONFIG:
+                        board = msg.newBoard();
+                        break;
+                    case Message.NEW_GAME:
+                    case Message.SWITCH_TURN:
+                        // also where a fresh board starts after falling behind
+                        board.clear();
+                        System.out.println("new game");
+                        break;
+                    case Message.MOVE:
+                        board.play(msg.cell, GameEngine.player(msg.mark));
+                        System.out.println(msg);
+                        print();
+                        break;
+                    case Message.EXIT_GAME:
+                        System.out.println("the match is over");
+                        return;
+                    default:
+                        break;
+                }
+            }
+        } catch (EOFException e) {
+            System.out.println("the server has gone");
+        } finally {
+            link.close();
+        }
+    }
+
+    /**
+     * Prints the board, a row per line.
+     */
+    private void print() {
+        StringBuilder rows = new StringBuilder();
+        for (int cell = 0; cell < board.cells(); cell++) {
+            int player = board.get(cell);
+            rows.append((player == GameEngine.O) ? 'O' : (player == GameEngine.X) ? 'X' : '.');
+            if ((cell + 1) % board.cols() == 0) {
+                rows.append(System.lineSeparator());
+            }
+        }
+        if (board.isOver()) {
+            rows.append((board.winner() == GameEngine.NONE) ? "draw"
+                    : ((board.winner() == GameEngine.O) ? "O" : "X") + " won")
+                    .append(System.lineSeparator());
+        }
+        System.out.print(rows);
+    }
+}
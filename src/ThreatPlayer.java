@@ -0,0 +1,83 @@
+/**
+ * ThreatPlayer plays on boards of any size. It wins at once if it can,
+ * blocks the opponent's immediate win, and otherwise marks the cell that
+ * best extends its own lines and cuts the opponent's, looking at the four
+ * lines through each free cell, at most k - 1 cells each way.
+ *
+ * @author Soheli Sultana
+ */
+public class ThreatPlayer implements AutoPlayer {
+    // the four line directions as (row, column) steps
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    @Override
+    public int nextMove(Board board, int player) {
+        int rows = board.rows();
+        int cols = board.cols();
+        int k = board.k();
+        int opponent = 1 - player;
+        int block = -1;
+        int best = -1;
+        long bestScore = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int cell = 0; cell < board.cells(); cell++) {
+            if (!board.isFree(cell)) {
+                continue;
+            }
+            long score = 0;
+            for (int[] d : DIRECTIONS) {
+                int mine = run(board, cell, player, d[0], d[1]) + run(board, cell, player, -d[0], -d[1]);
+                if (mine + 1 >= k) {
+                    return cell; // wins right away
+                }
+                int yours = run(board, cell, opponent, d[0], d[1]) + run(board, cell, opponent, -d[0], -d[1]);
+                if (yours + 1 >= k) {
+                    block = cell;
+                }
+                // my lines weigh twice as much as the opponent's
+                score += 2 * weight(mine) + weight(yours);
+            }
+            // break ties toward the center
+            int dr = 2 * (cell / cols) - (rows - 1);
+            int dc = 2 * (cell % cols) - (cols - 1);
+            int distance = dr * dr + dc * dc;
+            if (score > bestScore || (score == bestScore && distance < bestDistance)) {
+                best = cell;
+                bestScore = score;
+                bestDistance = distance;
+            }
+        }
+        return (block >= 0) ? block : best;
+    }
+
+    /**
+     * @return the weight of a run, growing eightfold with each mark
+     */
+    private static long weight(int run) {
+        return 1L << (3 * run);
+    }
+
+    /**
+     * Counts player's marks that follow a cell in one direction, stopping
+     * after k - 1 of them.
+     */
+    private static int run(Board board, int cell, int player, int dr, int dc) {
+        int rows = board.rows();
+        int cols = board.cols();
+        int r = cell / cols + dr;
+        int c = cell % cols + dc;
+        int n = 0;
+        while (n < board.k() - 1 && r >= 0 && r < rows && c >= 0 && c < cols
+                && board.get(r * cols + c) == player) {
+            n++;
+            r += dr;
+            c += dc;
+        }
+        return n;
+    }
+
+    @Override
+    public boolean deterministic() {
+        return true;
+    }
+}
@@ -0,0 +1,300 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Tournament is a headless round robin between auto player strategies. Every
+ * strategy plays every other one a number of games as O, (i.e., moving
+ * first), and as many as X, on a board of -Dttt.board. The games are split
+ * into ranges across a fork/join pool of all cores; each range plays on a
+ * board and strategies of its own, and the counts are merged on the way
+ * back up.
+ * <p>
+ * It prints a win/draw/loss matrix, (i.e., the row's record against the
+ * column over both colors), the record of each strategy moving first, and
+ * Elo ratings fitted to all pairings at once by the Bradley-Terry model,
+ * where a draw is half a win. A strategy is named as for AutoPlayer.named(),
+ * and a move to a taken cell loses the game.
+ *
+ * @author Soheli Sultana
+ */
+public class Tournament {
+    private static final int WIN = 0;  // outcomes for the strategy playing O
+    private static final int DRAW = 1;
+    private static final int LOSS = 2;
+    private static final int LEAF = Integer.getInteger("ttt.tournament.leaf", 4096); // games
+
+    private final String board;   // the -Dttt.board spec, null for 3x3x3
+    private final String[] names;
+    private final List<Supplier<AutoPlayer>> strategies;
+    private final int n;
+    private final long games;     // per strategy, per opponent, per color
+
+    /**
+     * Prints out the usage.
+     */
+    private static void usage() {
+        System.err.println("Usage: java [-Dttt.board=ROWSxCOLSxK] Tournament gamesPerColor "
+                + "[strategy...(default: perfect heuristic threat random)]");
+        System.exit(-1);
+    }
+
+    /**
+     * Runs a round robin.
+     *
+     * @param args args[0]: #games each strategy plays as O against each
+     *             other, (args[1...]: the strategies)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            usage();
+        }
+        long games = 0;
+        try {
+            games = Long.parseLong(args[0]);
+        } catch (NumberFormatException e) {
+            usage();
+        }
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            names.add(args[i]);
+        }
+        if (names.isEmpty()) {
+            names = (System.getProperty("ttt.board") == null)
+                    ? List.of("perfect", "heuristic", "threat", "random")
+                    : List.of("threat", "random");
+        }
+        if (games < 1 || names.size() < 2) {
+            usage();
+        }
+        Tournament tournament = null;
+        try {
+            tournament = new Tournament(System.getProperty("ttt.board"),
+                    names.toArray(new String[0]), games);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+        }
+        tournament.run();
+    }
+
+    /**
+     * Sets up a round robin, trying each strategy on an empty board.
+     *
+     * @param board      the board spec, (i.e., "ROWSxCOLSxK"), null for 3x3x3
+     * @param names      the strategies
+     * @param games      #games each strategy plays as O against each other
+     * @throws IllegalArgumentException if a strategy is unknown or can't play
+     *                                  on the board
+     */
+    public Tournament(String board, String[] names, long games) {
+        this.board = board;
+        this.names = names;
+        this.n = names.length;
+        this.games = games;
+        strategies = new ArrayList<>();
+        Board empty = Board.parse(board);
+        for (String name : names) {
+            AutoPlayer.named(name).nextMove(empty, GameEngine.O); // throws if it can't play here
+            strategies.add(() -> AutoPlayer.named(name));
+        }
+    }
+
+    /**
+     * Plays every game and prints the results.
+     */
+    public void run() {
+        long total = (long) n * (n - 1) * games;
+        long start = System.nanoTime();
+        long[] counts = ForkJoinPool.commonPool().invoke(new Games(0, total));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s, %d strategies, %d games on %d cores in %.2f s (%.0f games/s)%n",
+                (board == null) ? "3x3x3" : board, n, total,
+                ForkJoinPool.commonPool().getParallelism(), seconds, total / seconds);
+        print(counts);
+    }
+
+    /**
+     * @return the index of the outcome counter of first against second
+     */
+    private int at(int first, int second, int outcome) {
+        return (first * n + second) * 3 + outcome;
+    }
+
+    /**
+     * Is a range of games, numbered pairing by pairing: game g is game
+     * g % games of the g / games-th ordered pair of distinct strategies.
+     */
+    private class Games extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        Games(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > LEAF) {
+                long middle = (from + to) >>> 1;
+                Games left = new Games(from, middle);
+                left.fork();
+                long[] right = new Games(middle, to).compute();
+                long[] counts = left.join();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += right[i];
+                }
+                return counts;
+            }
+            long[] counts = new long[n * n * 3];
+            Board b = Board.parse(board);
+            AutoPlayer[] players = new AutoPlayer[n];
+            for (long g = from; g < to; g++) {
+                int pair = (int) (g / games);
+                int first = pair / (n - 1);
+                int second = pair % (n - 1);
+                if (second >= first) {
+                    second++; // skip playing myself
+                }
+                counts[at(first, second, play(b, players, first, second))]++;
+            }
+            return counts;
+        }
+
+        /**
+         * Plays a game between two strategies, creating them the first time.
+         *
+         * @return the outcome for first, (i.e., O)
+         */
+        private int play(Board b, AutoPlayer[] players, int first, int second) {
+            if (players[first] == null) {
+                players[first] = strategies.get(first).get();
+            }
+            if (players[second] == null) {
+                players[second] = strategies.get(second).get();
+            }
+            b.clear();
+            int player = GameEngine.O;
+            while (!b.isOver()) {
+                AutoPlayer ai = players[(player == GameEngine.O) ? first : second];
+                if (!b.play(ai.nextMove(b, player), player)) {
+                    return (player == GameEngine.O) ? LOSS : WIN;
+                }
+                player = 1 - player;
+            }
+            int winner = b.winner();
+            return (winner == GameEngine.NONE) ? DRAW : (winner == GameEngine.O) ? WIN : LOSS;
+        }
+    }
+
+    /**
+     * Prints the matrices and the ratings.
+     */
+    private void print(long[] counts) {
+        int width = 16; // fits "0.0/100.0/0.0" and a gap
+        for (String name : names) {
+            width = Math.max(width, name.length() + 2);
+        }
+        String cell = "%-" + width + "s";
+        StringBuilder out = new StringBuilder();
+        for (int table = 0; table < 2; table++) {
+            out.append(String.format(cell, (table == 0) ? "W/D/L" : "W/D/L as O"));
+            for (String name : names) {
+                out.append(String.format(cell, name));
+            }
+            out.append(System.lineSeparator());
+            for (int i = 0; i < n; i++) {
+                out.append(String.format(cell, names[i]));
+                for (int j = 0; j < n; j++) {
+                    long w = counts[at(i, j, WIN)];
+                    long d = counts[at(i, j, DRAW)];
+                    long l = counts[at(i, j, LOSS)];
+                    if (table == 0) {
+                        w += counts[at(j, i, LOSS)];
+                        d += counts[at(j, i, DRAW)];
+                        l += counts[at(j, i, WIN)];
+                    }
+                    out.append(String.format(cell, (i == j) ? "-"
+                            : percent(w, w + d + l) + "/" + percent(d, w + d + l)
+                            + "/" + percent(l, w + d + l)));
+                }
+                out.append(System.lineSeparator());
+            }
+            out.append(System.lineSeparator());
+        }
+        double[] elo = elo(counts);
+        out.append(String.format(cell, "Elo")).append(System.lineSeparator());
+        for (int i = 0; i < n; i++) {
+            out.append(String.format(cell, names[i]))
+                    .append(String.format("%+.0f", elo[i])).append(System.lineSeparator());
+        }
+        System.out.print(out);
+    }
+
+    private static String percent(long part, long whole) {
+        return String.format("%.1f", 100.0 * part / Math.max(1, whole));
+    }
+
+    /**
+     * Fits Bradley-Terry strengths to the results by the usual fixed point
+     * iteration, (i.e., strength = score / sum of games / (mine + yours)),
+     * and turns them into Elo points around a mean of 0. Each pairing also
+     * counts one virtual draw, so that a strategy that never scores still
+     * gets a finite rating.
+     *
+     * @return the rating of each strategy
+     */
+    private double[] elo(long[] counts) {
+        double[][] played = new double[n][n];
+        double[] score = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i == j) {
+                    continue;
+                }
+                double w = counts[at(i, j, WIN)] + counts[at(j, i, LOSS)];
+                double d = counts[at(i, j, DRAW)] + counts[at(j, i, DRAW)] + 1;
+                double l = counts[at(i, j, LOSS)] + counts[at(j, i, WIN)];
+                played[i][j] = w + d + l;
+                score[i] += w + d / 2;
+            }
+        }
+        double[] strength = new double[n];
+        Arrays.fill(strength, 1);
+        for (int round = 0; round < 10000; round++) {
+            double[] next = new double[n];
+            double change = 0;
+            double logSum = 0;
+            for (int i = 0; i < n; i++) {
+                double sum = 0;
+                for (int j = 0; j < n; j++) {
+                    if (i != j) {
+                        sum += played[i][j] / (strength[i] + strength[j]);
+                    }
+                }
+                next[i] = score[i] / sum;
+                logSum += Math.log(next[i]);
+            }
+            double scale = Math.exp(logSum / n); // keeps the geometric mean at 1
+            for (int i = 0; i < n; i++) {
+                next[i] /= scale;
+                change = Math.max(change, Math.abs(Math.log(next[i] / strength[i])));
+            }
+            strength = next;
+            if (change < 1e-9) {
+                break;
+            }
+        }
+        double[] elo = new double[n];
+        for (int i = 0; i < n; i++) {
+            elo[i] = 400 * Math.log10(strength[i]);
+        }
+        return elo;
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Path;
+
+/**
+ * Transport is a two-way byte stream to my counterpart, whatever carries
+ * it: a TCP socket, a JSCH channel (see Connection), a Unix domain socket
+ * between two processes on one host (see ChannelTransport) or a pair of
+ * in-memory pipes within one process (see PipeTransport). MessageStream
+ * runs on top of any of them.
+ *
+ * @author Soheli Sultana
+ */
+public interface Transport extends Closeable {
+    /**
+     * @return the stream from my counterpart
+     */
+    InputStream input();
+
+    /**
+     * @return the stream to my counterpart
+     */
+    OutputStream output();
+
+    /**
+     * Wraps a connected TCP socket.
+     *
+     * @param socket the socket
+     * @return a transport over it
+     */
+    static Transport of(Socket socket) throws IOException {
+        InputStream input = socket.getInputStream();
+        OutputStream output = socket.getOutputStream();
+        return new Transport() {
+            @Override
+            public InputStream input() {
+                return input;
+            }
+
+            @Override
+            public OutputStream output() {
+                return output;
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+    }
+
+    /**
+     * Checks if co-located peers should use a Unix domain socket, which is
+     * the case unless -Dttt.transport=tcp is given.
+     *
+     * @return true to prefer a Unix domain socket on the same host
+     */
+    static boolean localPreferred() {
+        return !"tcp".equals(System.getProperty("ttt.transport"));
+    }
+
+    /**
+     * Checks if two players on the same host should meet at a Unix domain
+     * socket rather than over TCP. Unlike a server's extra listener, this
+     * must be opt-in, given -Dttt.transport=unix, since a player that still
+     * polls over TCP would never find one waiting at the socket.
+     *
+     * @return true to rendezvous at a Unix domain socket
+     */
+    static boolean rendezvousRequested() {
+        return "unix".equals(System.getProperty("ttt.transport"));
+    }
+
+    /**
+     * Names the Unix domain socket that stands for a port on this host.
+     *
+     * @param port a TCP port
+     * @return the socket file, ttt-PORT.sock in the temporary directory
+     */
+    static Path localPath(int port) {
+        return Path.of(System.getProperty("java.io.tmpdir"), "ttt-" + port + ".sock");
+    }
+}
@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BarrierTest runs many rounds of each barrier with more threads than cores
+ * and checks that every round completes in time, (i.e., that no waiter
+ * misses its wake-up), and that no thread leaves a round before all have
+ * arrived.
+ *
+ * @author Soheli Sultana
+ */
+public class BarrierTest {
+    private static final int[] PARTIES = {1, 2, 3, 8, 17, 64};
+    private static final int ROUNDS = 2_000;
+    private static final long TIMEOUT_MILLIS = 60_000;
+
+    @Test
+    public void senseBarrierReleasesEveryRound() throws InterruptedException {
+        check(SenseBarrier::new);
+    }
+
+    @Test
+    public void combiningTreeBarrierReleasesEveryRound() throws InterruptedException {
+        check(CombiningTreeBarrier::new);
+        check(parties -> new CombiningTreeBarrier(parties, 2));
+    }
+
+    @Test
+    public void disseminationBarrierReleasesEveryRound() throws InterruptedException {
+        check(DisseminationBarrier::new);
+    }
+
+    private static void check(IntFunction<Barrier> factory) throws InterruptedException {
+        for (int parties : PARTIES) {
+            Barrier barrier = factory.apply(parties);
+            AtomicInteger arrived = new AtomicInteger();
+            AtomicReference<String> failure = new AtomicReference<>();
+            Thread[] threads = new Thread[parties];
+            for (int t = 0; t < parties; t++) {
+                int id = t;
+                threads[t] = new Thread(() -> {
+                    for (int round = 1; round <= ROUNDS; round++) {
+                        arrived.incrementAndGet();
+                        barrier.await(id);
+                        if (arrived.get() < round * parties) {
+                            failure.compareAndSet(null, "thread " + id + " left round "
+                                    + round + " early");
+                        }
+                        // nobody may arrive at the next round before I left this one
+                        barrier.await(id);
+                    }
+                }, "BarrierTest-" + t);
+                threads[t].setDaemon(true);
+                threads[t].start();
+            }
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            for (Thread thread : threads) {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+                assertFalse(thread.isAlive(), barrier.getClass().getName() + " with "
+                        + parties + " parties hung at " + arrived.get() + " arrivals");
+            }
+            assertEquals(null, failure.get());
+            assertEquals(ROUNDS * parties, arrived.get());
+        }
+    }
+}
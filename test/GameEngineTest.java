@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * GameEngineTest checks the precomputed win table of GameEngine and the
+ * incremental win detection of MnkBoard against a plain scan of the board.
+ *
+ * @author Soheli Sultana
+ */
+public class GameEngineTest {
+    @Test
+    public void winningTableMatchesAScanOfEveryMask() {
+        for (int mask = 0; mask <= GameEngine.FULL; mask++) {
+            assertEquals(scan(mask), GameEngine.isWin(mask), "mask " + Integer.toOctalString(mask));
+        }
+    }
+
+    @Test
+    public void engineFindsTheWinner() {
+        GameEngine engine = new GameEngine();
+        int[] moves = {4, 0, 2, 6, 3, 5, 1, 7};
+        for (int i = 0; i < moves.length; i++) {
+            assertTrue(engine.play(moves[i], i % 2));
+            assertEquals(GameEngine.NONE, engine.winner());
+        }
+        assertFalse(engine.isOver());
+        assertFalse(engine.play(4, GameEngine.X));
+        assertTrue(engine.play(8, GameEngine.O));
+        assertTrue(engine.isFull());
+        assertEquals(GameEngine.NONE, engine.winner());
+        assertTrue(engine.isOver());
+
+        engine.clear();
+        int[] diagonal = {2, 0, 4, 1, 6};
+        for (int i = 0; i < diagonal.length; i++) {
+            engine.play(diagonal[i], i % 2);
+        }
+        assertTrue(engine.hasWon(GameEngine.O));
+        assertEquals(GameEngine.O, engine.winner());
+        assertTrue(engine.isOver());
+    }
+
+    @Test
+    public void mnkBoardDetectsALineOfK() {
+        MnkBoard board = new MnkBoard(15, 15, 5);
+        for (int c = 0; c < 4; c++) {
+            board.play(7 * 15 + c, GameEngine.X);
+        }
+        assertEquals(GameEngine.NONE, board.winner());
+        board.play(7 * 15 + 4, GameEngine.X);
+        assertTrue(board.hasWon(GameEngine.X));
+        // a later line of the other player doesn't take the win away
+        for (int r = 0; r < 5; r++) {
+            board.play(r * 15 + 14, GameEngine.O);
+        }
+        assertEquals(GameEngine.X, board.winner());
+        board.clear();
+        assertEquals(GameEngine.NONE, board.winner());
+    }
+
+    @Test
+    public void mnkBoardLinesDontWrapAroundAnEdge() {
+        MnkBoard board = new MnkBoard(5, 5, 3);
+        for (int cell : new int[] {13, 14, 15}) { // a row running into the next
+            board.play(cell, GameEngine.O);
+        }
+        for (int cell : new int[] {4, 10, 16}) {  // a diagonal running into the next
+            board.play(cell, GameEngine.X);
+        }
+        assertEquals(GameEngine.NONE, board.winner());
+    }
+
+    @Test
+    public void mnkBoardMatchesAScanOfRandomGames() {
+        Random random = new Random(1);
+        int[][] sizes = {{3, 3, 3}, {4, 4, 3}, {5, 7, 4}, {15, 15, 5}, {19, 19, 5}};
+        for (int[] size : sizes) {
+            for (int game = 0; game < 200; game++) {
+                MnkBoard board = new MnkBoard(size[0], size[1], size[2]);
+                int player = GameEngine.O;
+                while (!board.isOver()) {
+                    int cell = random.nextInt(board.cells());
+                    if (board.play(cell, player)) {
+                        assertEquals(scan(board), board.winner(), "game " + game);
+                        player = 1 - player;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if mask holds three cells in a row, column or diagonal
+     */
+    private static boolean scan(int mask) {
+        for (int i = 0; i < 3; i++) {
+            if (full(mask, i * 3, 1) || full(mask, i, 3)) {
+                return true;
+            }
+        }
+        return full(mask, 0, 4) || full(mask, 2, 2);
+    }
+
+    private static boolean full(int mask, int first, int step) {
+        for (int i = 0, cell = first; i < 3; i++, cell += step) {
+            if ((mask & (1 << cell)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the player with k in a line found by scanning every cell, or
+     * NONE
+     */
+    private static int scan(MnkBoard board) {
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        for (int cell = 0; cell < board.cells(); cell++) {
+            int player = board.get(cell);
+            if (player == GameEngine.NONE) {
+                continue;
+            }
+            for (int[] d : directions) {
+                int r = cell / board.cols();
+                int c = cell % board.cols();
+                int n = 0;
+                while (n < board.k() && r >= 0 && r < board.rows() && c >= 0 && c < board.cols()
+                        && board.get(r * board.cols() + c) == player) {
+                    n++;
+                    r += d[0];
+                    c += d[1];
+                }
+                if (n == board.k()) {
+                    return player;
+                }
+            }
+        }
+        return GameEngine.NONE;
+    }
+}
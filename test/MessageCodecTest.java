@@ -0,0 +1,151 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/**
+ * MessageCodecTest round-trips messages through both wire formats and checks
+ * the frame length limit and how each format is recognized.
+ *
+ * @author Soheli Sultana
+ */
+public class MessageCodecTest {
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private final Message in = new Message();
+
+    @Test
+    public void binaryRoundTrip() throws StreamCorruptedException {
+        Message[] messages = {
+                message(Message.MOVE, 'X', 360, 7, 42),
+                message(Message.NEW_GAME, 0, 0, 1, 1),
+                message(Message.SWITCH_TURN, 0, 0, 1, 2),
+                message(Message.EXIT_GAME, 0, 0, Integer.MAX_VALUE, -1),
+                message(Message.HELLO, 0, MessageCodec.VERSION, 0, 0),
+                new Message().config(new MnkBoard(15, 19, 5)),
+                new Message().join(Message.MAX_RATING),
+                message(Message.WATCH, 0, 0, 9, 0),
+        };
+        for (Message out : messages) {
+            assertTrue(MessageCodec.encode(out, true, buffer));
+        }
+        buffer.flip();
+        for (Message out : messages) {
+            assertTrue(MessageCodec.decode(buffer, in));
+            assertFields(out, in);
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void legacyRoundTrip() throws StreamCorruptedException {
+        Message[] messages = {
+                message(Message.NEW_GAME, 0, 0, 0, 0),
+                message(Message.MOVE, 'O', 4, 0, 0),
+                message(Message.SWITCH_TURN, 0, 0, 0, 0),
+                message(Message.MOVE, 'X', 8, 0, 0),
+                message(Message.EXIT_GAME, 0, 0, 0, 0),
+        };
+        for (Message out : messages) {
+            assertTrue(MessageCodec.encode(out, false, buffer));
+        }
+        buffer.flip();
+        assertEquals("NewGame4 OSwitchTurn8 XExitGame",
+                StandardCharsets.US_ASCII.decode(buffer.duplicate()).toString());
+        for (Message out : messages) {
+            assertTrue(MessageCodec.decode(buffer, in));
+            assertFields(out, in);
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void partialMessagesWaitForMoreBytes() throws StreamCorruptedException {
+        MessageCodec.encode(message(Message.MOVE, 'O', 12, 3, 4), true, buffer);
+        MessageCodec.encode(message(Message.SWITCH_TURN, 0, 0, 0, 0), false, buffer);
+        buffer.flip();
+        int end = buffer.limit();
+        for (int limit = 0; limit < MessageCodec.FRAME_SIZE; limit++) {
+            buffer.limit(limit);
+            assertFalse(MessageCodec.decode(buffer, in));
+            assertEquals(0, buffer.position());
+        }
+        buffer.limit(end - 1);
+        assertTrue(MessageCodec.decode(buffer, in));
+        assertFalse(MessageCodec.decode(buffer, in));
+        assertEquals(MessageCodec.FRAME_SIZE, buffer.position());
+        buffer.limit(end);
+        assertTrue(MessageCodec.decode(buffer, in));
+        assertEquals(Message.SWITCH_TURN, in.type);
+    }
+
+    @Test
+    public void longerFramesAreSkippedUpTo255Bytes() throws StreamCorruptedException {
+        MessageCodec.encode(message(Message.MOVE, 'X', 5, 1, 1), true, buffer);
+        buffer.putShort(0, (short) 255);
+        buffer.position(2 + 255);
+        MessageCodec.encode(message(Message.EXIT_GAME, 0, 0, 1, 2), true, buffer);
+        buffer.flip();
+        assertTrue(MessageCodec.decode(buffer, in));
+        assertEquals(5, in.cell);
+        assertTrue(MessageCodec.decode(buffer, in));
+        assertEquals(Message.EXIT_GAME, in.type);
+
+        buffer.clear();
+        buffer.putShort((short) 256).put(new byte[256]).flip();
+        assertThrows(StreamCorruptedException.class, () -> MessageCodec.decodeBinary(buffer, in));
+        buffer.clear();
+        buffer.putShort((short) (MessageCodec.BODY_SIZE - 1)).put(new byte[16]).flip();
+        assertThrows(StreamCorruptedException.class, () -> MessageCodec.decode(buffer, in));
+    }
+
+    @Test
+    public void legacyIsToldFromBinaryByTheFirstByte() {
+        assertTrue(MessageCodec.isBinary((byte) 0));
+        for (byte first : "0123456789NSE".getBytes(StandardCharsets.US_ASCII)) {
+            assertFalse(MessageCodec.isBinary(first));
+        }
+        buffer.put("Hello".getBytes(StandardCharsets.US_ASCII)).flip();
+        assertThrows(StreamCorruptedException.class, () -> MessageCodec.decode(buffer, in));
+        buffer.clear();
+        buffer.put("4-O".getBytes(StandardCharsets.US_ASCII)).flip();
+        assertThrows(StreamCorruptedException.class, () -> MessageCodec.decode(buffer, in));
+    }
+
+    @Test
+    public void encodingIntoTooSmallABufferWritesNothing() {
+        ByteBuffer small = ByteBuffer.allocate(MessageCodec.FRAME_SIZE - 1);
+        assertFalse(MessageCodec.encode(message(Message.MOVE, 'O', 1, 0, 0), true, small));
+        assertEquals(0, small.position());
+        small = ByteBuffer.allocate(4);
+        assertFalse(MessageCodec.encode(message(Message.MOVE, 'O', 100, 0, 0), false, small));
+        assertFalse(MessageCodec.encode(message(Message.EXIT_GAME, 0, 0, 0, 0), false, small));
+        assertEquals(0, small.position());
+    }
+
+    @Test
+    public void joinRejectsRatingsThatDontFit() {
+        assertThrows(IllegalArgumentException.class, () -> new Message().join(-1));
+        assertThrows(IllegalArgumentException.class, () -> new Message().join(Message.MAX_RATING + 1));
+        assertEquals(0, new Message().join(0).cell);
+    }
+
+    private static Message message(byte type, int mark, int cell, int gameId, int seq) {
+        Message msg = new Message().set(type, (byte) mark, cell);
+        msg.gameId = gameId;
+        msg.seq = seq;
+        return msg;
+    }
+
+    private static void assertFields(Message expected, Message actual) {
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.mark, actual.mark);
+        assertEquals(expected.cell, actual.cell);
+        assertEquals(expected.gameId, actual.gameId);
+        assertEquals(expected.seq, actual.seq);
+    }
+}
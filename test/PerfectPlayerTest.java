@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * PerfectPlayerTest plays PerfectPlayer against every possible line of play
+ * of its opponent, on either side, and checks that it never loses.
+ *
+ * @author Soheli Sultana
+ */
+public class PerfectPlayerTest {
+    private final PerfectPlayer perfect = new PerfectPlayer();
+
+    @Test
+    public void neverLosesAsEitherPlayer() {
+        for (int me : new int[] {GameEngine.O, GameEngine.X}) {
+            int games = play(new GameEngine(), GameEngine.O, me);
+            assertTrue(games > 0);
+        }
+    }
+
+    @Test
+    public void drawsAgainstItself() {
+        GameEngine engine = new GameEngine();
+        for (int player = GameEngine.O; !engine.isOver(); player = 1 - player) {
+            assertTrue(engine.play(perfect.nextMove(engine, player), player));
+        }
+        assertEquals(GameEngine.NONE, engine.winner());
+    }
+
+    /**
+     * Plays out every game from here where me moves perfectly and the other
+     * player tries every free cell.
+     *
+     * @return #games played out
+     */
+    private int play(GameEngine engine, int toMove, int me) {
+        if (engine.isOver()) {
+            assertNotEquals(1 - me, engine.winner(), "lost with O=" + engine.mask(GameEngine.O)
+                    + " X=" + engine.mask(GameEngine.X));
+            return 1;
+        }
+        if (toMove == me) {
+            int cell = perfect.nextMove(engine, me);
+            GameEngine next = copy(engine);
+            assertTrue(next.play(cell, me), "played taken cell " + cell);
+            return play(next, 1 - me, me);
+        }
+        int games = 0;
+        for (int cell = 0; cell < GameEngine.CELLS; cell++) {
+            if (engine.isFree(cell)) {
+                GameEngine next = copy(engine);
+                next.play(cell, toMove);
+                games += play(next, me, me);
+            }
+        }
+        return games;
+    }
+
+    private static GameEngine copy(GameEngine engine) {
+        GameEngine copy = new GameEngine();
+        for (int cell = 0; cell < GameEngine.CELLS; cell++) {
+            if (engine.get(cell) != GameEngine.NONE) {
+                copy.play(cell, engine.get(cell));
+            }
+        }
+        return copy;
+    }
+}